@@ -0,0 +1,205 @@
+package cn.com.zach.tools.increment.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+/**
+ * 压测用的内存jdbc替身: 模拟mysql.sequence.sql中的nextblock(name, n)和nextval(name)函数,
+ * 支持?参数和字面量, 一条语句可以包含多个函数调用. 可以设置每次查询的模拟往返延迟.
+ *
+ * @author zach
+ */
+public class InMemorySequenceDataSource {
+
+	/**
+	 * 匹配nextblock('name', n), nextblock(?, ?), nextval('name'), nextval(?)
+	 */
+	private static final Pattern FUNCTION = Pattern
+			.compile("(nextblock|nextval)\\(\\s*('([^']*)'|\\?)\\s*(,\\s*(\\d+|\\?))?\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * 序列当前值
+	 */
+	private final Map<String, Long> values = new HashMap<String, Long>();
+
+	/**
+	 * 每次查询的模拟往返延迟(微秒)
+	 */
+	private final long latencyMicros;
+
+	/**
+	 * sys_sequence表默认初始值
+	 */
+	private final long initialValue;
+
+	public InMemorySequenceDataSource(long latencyMicros) {
+		this(latencyMicros, 1000);
+	}
+
+	public InMemorySequenceDataSource(long latencyMicros, long initialValue) {
+		this.latencyMicros = latencyMicros;
+		this.initialValue = initialValue;
+	}
+
+	/**
+	 * 创建DataSource代理
+	 *
+	 * @return
+	 */
+	public DataSource create() {
+		return proxy(DataSource.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if ("getConnection".equals(method.getName())) {
+					return connection();
+				}
+				return basic(proxy, method, args);
+			}
+		});
+	}
+
+	private Connection connection() {
+		return proxy(Connection.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if ("prepareStatement".equals(name)) {
+					return statement((String) args[0]);
+				}
+				if ("createStatement".equals(name)) {
+					return statement(null);
+				}
+				if ("getAutoCommit".equals(name)) {
+					return true;
+				}
+				if ("isClosed".equals(name)) {
+					return false;
+				}
+				return basic(proxy, method, args);
+			}
+		});
+	}
+
+	private PreparedStatement statement(final String preparedSql) {
+		final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+		return proxy(PreparedStatement.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if ("setString".equals(name) || "setLong".equals(name) || "setInt".equals(name)) {
+					parameters.put((Integer) args[0], args[1]);
+					return null;
+				}
+				if ("executeQuery".equals(name)) {
+					String sql = args != null && args.length > 0 ? (String) args[0] : preparedSql;
+					return execute(sql, parameters);
+				}
+				return basic(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * 执行查询, 每个函数调用返回一列
+	 *
+	 * @param sql
+	 * @param parameters
+	 * @return
+	 * @throws SQLException
+	 */
+	private ResultSet execute(String sql, Map<Integer, Object> parameters) throws SQLException {
+		if (latencyMicros > 0) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+		}
+		final List<Long> columns = new ArrayList<Long>();
+		Matcher matcher = FUNCTION.matcher(sql);
+		int index = 1;
+		while (matcher.find()) {
+			String name = matcher.group(3) != null ? matcher.group(3) : (String) parameters.get(index++);
+			long increment;
+			if ("nextval".equalsIgnoreCase(matcher.group(1))) {
+				increment = 1;
+			} else if ("?".equals(matcher.group(5))) {
+				increment = ((Number) parameters.get(index++)).longValue();
+			} else {
+				increment = Long.parseLong(matcher.group(5));
+			}
+			columns.add(next(name, increment));
+		}
+		if (columns.isEmpty()) {
+			throw new SQLException("不支持的语句: " + sql);
+		}
+		return proxy(ResultSet.class, new InvocationHandler() {
+			private boolean moved = false;
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if ("next".equals(name)) {
+					boolean hasNext = !moved;
+					moved = true;
+					return hasNext;
+				}
+				if ("getLong".equals(name) && args[0] instanceof Integer) {
+					return columns.get((Integer) args[0] - 1);
+				}
+				return basic(proxy, method, args);
+			}
+		});
+	}
+
+	private synchronized long next(String name, long increment) {
+		Long current = values.get(name);
+		long value = (current == null ? initialValue : current) + increment;
+		values.put(name, value);
+		return value;
+	}
+
+	/**
+	 * equals, hashCode, toString和其他未模拟的方法
+	 */
+	private static Object basic(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if ("equals".equals(name)) {
+			return proxy == args[0];
+		}
+		if ("hashCode".equals(name)) {
+			return System.identityHashCode(proxy);
+		}
+		if ("toString".equals(name)) {
+			return "InMemorySequenceDataSource." + method.getDeclaringClass().getSimpleName();
+		}
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(InMemorySequenceDataSource.class.getClassLoader(), new Class<?>[] { type },
+				handler);
+	}
+}
@@ -0,0 +1,149 @@
+package cn.com.zach.tools.increment.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+import cn.com.zach.tools.increment.HiLoMaxValueIncrementer;
+import cn.com.zach.tools.increment.InMemorySequenceStore;
+import cn.com.zach.tools.increment.MySQLSequenceMaxValueIncrementer;
+import cn.com.zach.tools.increment.MysqlSequenceIncrementer;
+import cn.com.zach.tools.increment.SegmentSequenceIncrementer;
+import cn.com.zach.tools.increment.SequenceMaxValueIncrementer;
+import cn.com.zach.tools.increment.SnowflakeMaxValueIncrementer;
+import cn.com.zach.tools.increment.UUIDMaxValueIncrementer;
+import cn.com.zach.tools.increment.UUIDv7MaxValueIncrementer;
+
+/**
+ * 所有DataFieldMaxValueIncrementer实现的取号压测. 线程数由{@link IncrementerBenchmarkRunner}按1, 4, 16, 64依次设置,
+ * 也可以用-t指定; mysql相关实现使用{@link InMemorySequenceDataSource}代替数据库, 往返延迟由jdbcLatencyMicros设置.
+ * 不使用块大小的实现(uuid, snowflake)对每个blockSize结果相同.
+ *
+ * @author zach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementerBenchmark {
+
+	@Param({ "sequence", "sequenceStriped", "sequenceMapped", "hilo", "uuid", "uuidv7", "snowflake", "mysql",
+			"mysqlDoubleBuffer", "mysqlNextval", "segmentInMemory" })
+	public String implementation;
+
+	@Param({ "100", "1000", "10000" })
+	public int blockSize;
+
+	@Param({ "0" })
+	public long jdbcLatencyMicros;
+
+	private DataFieldMaxValueIncrementer incrementer;
+
+	/**
+	 * 只支持字符串主键的实现
+	 */
+	private boolean stringValue;
+
+	private File localFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		stringValue = false;
+		if ("sequence".equals(implementation) || "sequenceStriped".equals(implementation)
+				|| "sequenceMapped".equals(implementation)) {
+			SequenceMaxValueIncrementer sequence = new SequenceMaxValueIncrementer();
+			sequence.setLocalFile(createLocalFile());
+			sequence.setBlockSize(blockSize);
+			if ("sequenceStriped".equals(implementation)) {
+				sequence.setStripes(Runtime.getRuntime().availableProcessors());
+			}
+			sequence.setMemoryMapped("sequenceMapped".equals(implementation));
+			sequence.afterPropertiesSet();
+			incrementer = sequence;
+		} else if ("hilo".equals(implementation)) {
+			HiLoMaxValueIncrementer hilo = new HiLoMaxValueIncrementer();
+			hilo.setLocalFile(createLocalFile());
+			hilo.setBlockSize(blockSize);
+			hilo.afterPropertiesSet();
+			incrementer = hilo;
+		} else if ("uuid".equals(implementation)) {
+			incrementer = new UUIDMaxValueIncrementer();
+			stringValue = true;
+		} else if ("uuidv7".equals(implementation)) {
+			incrementer = new UUIDv7MaxValueIncrementer();
+			stringValue = true;
+		} else if ("snowflake".equals(implementation)) {
+			incrementer = new SnowflakeMaxValueIncrementer(1);
+		} else if ("mysql".equals(implementation) || "mysqlDoubleBuffer".equals(implementation)) {
+			MySQLSequenceMaxValueIncrementer mysql = new MySQLSequenceMaxValueIncrementer();
+			mysql.setDataSource(new InMemorySequenceDataSource(jdbcLatencyMicros).create());
+			mysql.setIncrementerName("benchmark");
+			mysql.setCacheSize(blockSize);
+			mysql.setDoubleBuffer("mysqlDoubleBuffer".equals(implementation));
+			mysql.afterPropertiesSet();
+			incrementer = mysql;
+		} else if ("mysqlNextval".equals(implementation)) {
+			MysqlSequenceIncrementer nextval = new MysqlSequenceIncrementer(
+					new InMemorySequenceDataSource(jdbcLatencyMicros).create(), "benchmark");
+			nextval.afterPropertiesSet();
+			incrementer = nextval;
+		} else if ("segmentInMemory".equals(implementation)) {
+			incrementer = new SegmentSequenceIncrementer(new InMemorySequenceStore(), "benchmark", blockSize);
+		} else {
+			throw new IllegalArgumentException("未知实现: " + implementation);
+		}
+	}
+
+	/**
+	 * 在临时目录创建空序列文件, 文件不存在时incrementer会退回到classpath目录
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private String createLocalFile() throws IOException {
+		localFile = File.createTempFile("incrementer-benchmark", ".dat");
+		return localFile.toURI().toString();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (incrementer instanceof DisposableBean) {
+			((DisposableBean) incrementer).destroy();
+		}
+		if (localFile != null) {
+			localFile.delete();
+			localFile = null;
+		}
+	}
+
+	/**
+	 * long主键直接交给Blackhole, 避免装箱计入分配速率
+	 */
+	@Benchmark
+	public void nextValue(Blackhole blackhole) {
+		if (stringValue) {
+			blackhole.consume(incrementer.nextStringValue());
+		} else {
+			blackhole.consume(incrementer.nextLongValue());
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package cn.com.zach.tools.increment.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 按1, 4, 16, 64线程依次运行{@link IncrementerBenchmark}, 开启gc profiler输出分配速率(gc.alloc.rate.norm),
+ * 每个线程数的结果写入results-线程数.json. 其他jmh命令行参数(例如-p implementation=hilo)原样传入;
+ * 指定了-t时只按指定线程数运行一次.
+ *
+ * 用法: 根目录mvn install, 然后在benchmarks目录mvn package, java -jar target/benchmarks.jar
+ *
+ * @author zach
+ */
+public class IncrementerBenchmarkRunner {
+
+	/**
+	 * 默认线程数
+	 */
+	private static final int[] THREADS = { 1, 4, 16, 64 };
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		int[] threads = commandLine.getThreads().hasValue() ? new int[] { commandLine.getThreads().get() } : THREADS;
+		for (int thread : threads) {
+			Options options = new OptionsBuilder().parent(commandLine)
+					.include(IncrementerBenchmark.class.getName())
+					.threads(thread)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result("results-" + thread + ".json")
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
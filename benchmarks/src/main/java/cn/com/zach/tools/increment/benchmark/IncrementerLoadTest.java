@@ -0,0 +1,407 @@
+package cn.com.zach.tools.increment.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+import cn.com.zach.tools.increment.HiLoMaxValueIncrementer;
+import cn.com.zach.tools.increment.LatencyHistogram;
+import cn.com.zach.tools.increment.MySQLSequenceMaxValueIncrementer;
+import cn.com.zach.tools.increment.SequenceMaxValueIncrementer;
+import cn.com.zach.tools.increment.SnowflakeMaxValueIncrementer;
+
+/**
+ * 取号压测: N个线程在固定时间内对同一个incrementer取号, 结束后把所有号码排序检查全局唯一,
+ * 统计吞吐量, 单次取号耗时百分位和空洞比例(号码范围内未使用的比例).
+ * 设置restarts后把时间分成restarts+1段, 每段结束时模拟进程重启: 正常重启调用destroy, 崩溃时直接丢弃实例;
+ * 下一段由工厂重新创建incrementer, 读取同一个序列文件继续取号, 重启前后的号码一起检查唯一性.
+ * 崩溃只能模拟进程内状态丢失, 操作系统缓存中已写入的文件内容仍然保留.
+ *
+ * 用法: java -cp target/benchmarks.jar cn.com.zach.tools.increment.benchmark.IncrementerLoadTest
+ * [implementation] [threads] [seconds] [restarts] [crash] [blockSize]
+ *
+ * @author zach
+ */
+public class IncrementerLoadTest {
+
+	/**
+	 * 每次重启创建新的incrementer
+	 */
+	public interface IncrementerFactory {
+
+		/**
+		 * 创建并初始化incrementer
+		 *
+		 * @return
+		 * @throws Exception
+		 */
+		DataFieldMaxValueIncrementer create() throws Exception;
+	}
+
+	/**
+	 * incrementer工厂
+	 */
+	private final IncrementerFactory factory;
+
+	/**
+	 * 取号线程数
+	 */
+	private int threads = 4;
+
+	/**
+	 * 总压测时间(毫秒)
+	 */
+	private long durationMillis = 10000;
+
+	/**
+	 * 模拟重启次数
+	 */
+	private int restarts = 0;
+
+	/**
+	 * 是否模拟崩溃, true时重启前不调用destroy
+	 */
+	private boolean crash = false;
+
+	public IncrementerLoadTest(IncrementerFactory factory) {
+		this.factory = factory;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		if (threads > 0) {
+			this.threads = threads;
+		}
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		if (durationMillis > 0) {
+			this.durationMillis = durationMillis;
+		}
+	}
+
+	public int getRestarts() {
+		return restarts;
+	}
+
+	public void setRestarts(int restarts) {
+		if (restarts >= 0) {
+			this.restarts = restarts;
+		}
+	}
+
+	public boolean isCrash() {
+		return crash;
+	}
+
+	public void setCrash(boolean crash) {
+		this.crash = crash;
+	}
+
+	/**
+	 * 运行压测
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	public Result run() throws Exception {
+		int cycles = restarts + 1;
+		long cycleNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis) / cycles;
+		List<IdBuffer> buffers = new ArrayList<IdBuffer>();
+		LatencyHistogram latency = new LatencyHistogram();
+		long[] cycleCounts = new long[cycles];
+		long elapsedNanos = 0;
+		for (int cycle = 0; cycle < cycles; cycle++) {
+			DataFieldMaxValueIncrementer incrementer = factory.create();
+			long start = System.nanoTime();
+			List<Worker> workers = runCycle(incrementer, start + cycleNanos);
+			elapsedNanos += System.nanoTime() - start;
+			for (Worker worker : workers) {
+				if (worker.failure != null) {
+					throw new IllegalStateException("取号失败", worker.failure);
+				}
+				buffers.add(worker.ids);
+				latency.add(worker.latency);
+				cycleCounts[cycle] += worker.ids.size;
+			}
+			if (!crash && incrementer instanceof DisposableBean) {
+				((DisposableBean) incrementer).destroy();
+			}
+		}
+		return verify(buffers, latency, cycleCounts, elapsedNanos);
+	}
+
+	/**
+	 * 运行一段, 所有线程同时开始, 到期后停止
+	 */
+	private List<Worker> runCycle(final DataFieldMaxValueIncrementer incrementer, final long deadline)
+			throws InterruptedException {
+		final CountDownLatch ready = new CountDownLatch(1);
+		List<Worker> workers = new ArrayList<Worker>();
+		for (int i = 0; i < threads; i++) {
+			Worker worker = new Worker(incrementer, deadline, ready);
+			worker.setName("load-test-" + i);
+			worker.start();
+			workers.add(worker);
+		}
+		ready.countDown();
+		for (Worker worker : workers) {
+			worker.join();
+		}
+		return workers;
+	}
+
+	/**
+	 * 合并排序所有号码, 检查重复并统计空洞
+	 */
+	private Result verify(List<IdBuffer> buffers, LatencyHistogram latency, long[] cycleCounts, long elapsedNanos) {
+		long total = 0;
+		for (IdBuffer buffer : buffers) {
+			total += buffer.size;
+		}
+		if (total > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("号码个数超过单个数组上限, 请缩短压测时间: " + total);
+		}
+		long[] all = new long[(int) total];
+		int offset = 0;
+		for (IdBuffer buffer : buffers) {
+			System.arraycopy(buffer.values, 0, all, offset, buffer.size);
+			offset += buffer.size;
+		}
+		Arrays.parallelSort(all);
+		long duplicates = 0;
+		for (int i = 1; i < all.length; i++) {
+			if (all[i] == all[i - 1]) {
+				duplicates++;
+			}
+		}
+		Result result = new Result();
+		result.count = total;
+		result.duplicates = duplicates;
+		result.elapsedNanos = elapsedNanos;
+		result.latency = latency;
+		result.cycleCounts = cycleCounts;
+		if (all.length > 0) {
+			result.minId = all[0];
+			result.maxId = all[all.length - 1];
+		}
+		return result;
+	}
+
+	/**
+	 * 取号线程, 每个线程单独记录号码和耗时
+	 */
+	private static final class Worker extends Thread {
+
+		private final DataFieldMaxValueIncrementer incrementer;
+
+		private final long deadline;
+
+		private final CountDownLatch ready;
+
+		private final IdBuffer ids = new IdBuffer();
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private Throwable failure;
+
+		Worker(DataFieldMaxValueIncrementer incrementer, long deadline, CountDownLatch ready) {
+			this.incrementer = incrementer;
+			this.deadline = deadline;
+			this.ready = ready;
+		}
+
+		@Override
+		public void run() {
+			try {
+				ready.await();
+				long now = System.nanoTime();
+				while (now - deadline < 0) {
+					long id = incrementer.nextLongValue();
+					long end = System.nanoTime();
+					latency.record(end - now);
+					ids.add(id);
+					now = end;
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * 可增长的long数组
+	 */
+	private static final class IdBuffer {
+
+		private long[] values = new long[1 << 16];
+
+		private int size = 0;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, values.length << 1);
+			}
+			values[size++] = value;
+		}
+	}
+
+	/**
+	 * 压测结果
+	 */
+	public static class Result {
+
+		private long count;
+
+		private long duplicates;
+
+		private long elapsedNanos;
+
+		private long minId;
+
+		private long maxId;
+
+		private long[] cycleCounts;
+
+		private LatencyHistogram latency;
+
+		/**
+		 * 取号总数
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * 重复号码个数, 大于0说明生成器有问题
+		 */
+		public long getDuplicates() {
+			return duplicates;
+		}
+
+		/**
+		 * 每秒取号数
+		 */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * 号码范围内未使用的比例, 包括块缓存丢弃和重启跳过的号码
+		 */
+		public double getGapRatio() {
+			if (count == 0) {
+				return 0;
+			}
+			double range = (double) maxId - minId + 1;
+			return (range - (count - duplicates)) / range;
+		}
+
+		public long getMinId() {
+			return minId;
+		}
+
+		public long getMaxId() {
+			return maxId;
+		}
+
+		/**
+		 * 每段(两次重启之间)的取号数
+		 */
+		public long[] getCycleCounts() {
+			return cycleCounts;
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"count=%d, duplicates=%d, throughput=%.0f/s, latency p50=%dns p99=%dns p999=%dns max=%dns, "
+							+ "range=[%d, %d], gapRatio=%.6f, cycles=%s",
+					count, duplicates, getThroughput(), latency.getPercentileNanos(50), latency.getPercentileNanos(99),
+					latency.getPercentileNanos(99.9), latency.getMaxNanos(), minId, maxId, getGapRatio(),
+					Arrays.toString(cycleCounts));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		final String implementation = args.length > 0 ? args[0] : "sequence";
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+		int restarts = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+		boolean crash = args.length > 4 && Boolean.parseBoolean(args[4]);
+		final int blockSize = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+
+		final File file = File.createTempFile("incrementer-load-test", ".dat");
+		file.deleteOnExit();
+		final InMemorySequenceDataSource database = new InMemorySequenceDataSource(0);
+		final AtomicReference<DataFieldMaxValueIncrementer> shared = new AtomicReference<DataFieldMaxValueIncrementer>();
+		IncrementerLoadTest test = new IncrementerLoadTest(new IncrementerFactory() {
+			@Override
+			public DataFieldMaxValueIncrementer create() throws Exception {
+				if ("sequence".equals(implementation) || "mapped".equals(implementation)
+						|| "crashSafe".equals(implementation)) {
+					SequenceMaxValueIncrementer sequence = new SequenceMaxValueIncrementer();
+					sequence.setLocalFile(file.toURI().toString());
+					sequence.setBlockSize(blockSize);
+					sequence.setMemoryMapped("mapped".equals(implementation));
+					sequence.setCrashSafe("crashSafe".equals(implementation));
+					sequence.afterPropertiesSet();
+					return sequence;
+				}
+				if ("hilo".equals(implementation)) {
+					HiLoMaxValueIncrementer hilo = new HiLoMaxValueIncrementer();
+					hilo.setLocalFile(file.toURI().toString());
+					hilo.setBlockSize(blockSize);
+					hilo.afterPropertiesSet();
+					return hilo;
+				}
+				if ("mysql".equals(implementation) || "mysqlDoubleBuffer".equals(implementation)) {
+					MySQLSequenceMaxValueIncrementer mysql = new MySQLSequenceMaxValueIncrementer();
+					mysql.setDataSource(database.create());
+					mysql.setIncrementerName("load_test");
+					mysql.setCacheSize(blockSize);
+					mysql.setDoubleBuffer("mysqlDoubleBuffer".equals(implementation));
+					mysql.afterPropertiesSet();
+					return mysql;
+				}
+				if ("snowflake".equals(implementation)) {
+					// snowflake重启后依赖时钟, 同一进程内重建实例时可能与上一个实例同一毫秒, 共用一个实例
+					if (shared.get() == null) {
+						shared.set(new SnowflakeMaxValueIncrementer(1));
+					}
+					return shared.get();
+				}
+				throw new IllegalArgumentException("未知实现: " + implementation);
+			}
+		});
+		test.setThreads(threads);
+		test.setDurationMillis(TimeUnit.SECONDS.toMillis(seconds));
+		test.setRestarts(restarts);
+		test.setCrash(crash);
+		Result result = test.run();
+		System.out.println(implementation + " threads=" + threads + " restarts=" + restarts + " crash=" + crash
+				+ " blockSize=" + blockSize);
+		System.out.println(result);
+		if (result.getDuplicates() > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -3,7 +3,6 @@ package cn.com.zach.tools.increment;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -13,6 +12,7 @@ import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
 
 /**
@@ -53,9 +53,39 @@ public abstract class AbstractLocalSequenceMaxValueIncrementer
 	private boolean alwaysOpenLocalFile = true;
 
 	/**
-	 * 写sequence文件
+	 * 是否使用内存映射文件保存sequence, true:申请序列块只写映射内存, 由操作系统异步刷盘
 	 */
-	private RandomAccessFile accessFile = null;
+	private boolean memoryMapped = false;
+
+	/**
+	 * 内存映射模式下刷盘策略: 1:每个块都刷盘, N:每N个块刷盘一次, 0:从不主动刷盘
+	 */
+	private int forceInterval = 1;
+
+	/**
+	 * 是否使用防崩溃的双槽位格式保存sequence, 每个块刷盘后才使用; 开启后不能再切换回单值格式, 关闭后读取双槽位文件会抛出异常
+	 */
+	private boolean crashSafe = false;
+
+	/**
+	 * 是否多进程共享sequence文件, true:申请序列块时加文件锁并重新读取文件, 块内取号仍在内存中完成
+	 */
+	private boolean processShared = false;
+
+	/**
+	 * sequence文件, 按存储方式申请序列块
+	 */
+	private LocalSequenceFile sequenceFile = null;
+
+	/**
+	 * 自适应块大小, 为空时固定使用blockSize
+	 */
+	private AdaptiveBlockSize adaptiveBlockSize = null;
+
+	/**
+	 * 统计监听, 序列名称为sequence文件路径
+	 */
+	private SequenceListener sequenceListener = null;
 
 	/**
 	 * 使用重入锁互斥实现互斥操作
@@ -110,42 +140,128 @@ public abstract class AbstractLocalSequenceMaxValueIncrementer
 		}
 	}
 
+	/**
+	 * @return the memoryMapped
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * @param memoryMapped
+	 *            the memoryMapped to set
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * @return the forceInterval
+	 */
+	public int getForceInterval() {
+		return forceInterval;
+	}
+
+	/**
+	 * @param forceInterval
+	 *            the forceInterval to set
+	 */
+	public void setForceInterval(int forceInterval) {
+		if (forceInterval >= 0) {
+			this.forceInterval = forceInterval;
+		}
+	}
+
+	/**
+	 * @return the crashSafe
+	 */
+	public boolean isCrashSafe() {
+		return crashSafe;
+	}
+
+	/**
+	 * @param crashSafe
+	 *            the crashSafe to set
+	 */
+	public void setCrashSafe(boolean crashSafe) {
+		this.crashSafe = crashSafe;
+	}
+
+	/**
+	 * @return the processShared
+	 */
+	public boolean isProcessShared() {
+		return processShared;
+	}
+
+	/**
+	 * @param processShared
+	 *            the processShared to set
+	 */
+	public void setProcessShared(boolean processShared) {
+		this.processShared = processShared;
+	}
+
+	/**
+	 * @return the sequenceListener
+	 */
+	public SequenceListener getSequenceListener() {
+		return sequenceListener;
+	}
+
+	/**
+	 * @param sequenceListener
+	 *            the sequenceListener to set
+	 */
+	public void setSequenceListener(SequenceListener sequenceListener) {
+		this.sequenceListener = sequenceListener;
+	}
+
+	/**
+	 * @return the adaptiveBlockSize
+	 */
+	public AdaptiveBlockSize getAdaptiveBlockSize() {
+		return adaptiveBlockSize;
+	}
+
+	/**
+	 * 设置自适应块大小, 每个incrementer使用独立实例
+	 * 
+	 * @param adaptiveBlockSize
+	 *            the adaptiveBlockSize to set
+	 */
+	public void setAdaptiveBlockSize(AdaptiveBlockSize adaptiveBlockSize) {
+		this.adaptiveBlockSize = adaptiveBlockSize;
+	}
+
+	/**
+	 * 下一次申请的序列块大小, 开启自适应时按取号速率计算, 否则为blockSize
+	 * 
+	 * @return
+	 */
+	protected int nextBlockSize() {
+		return adaptiveBlockSize == null ? blockSize : adaptiveBlockSize.next(blockSize);
+	}
+
 	/**
 	 * 获取下一个序列块
 	 * 
 	 * @param blockSize
-	 * @return
+	 * @return 序列块最大值
+	 * @throws DataAccessResourceFailureException
+	 *             序列文件读写失败
 	 */
 	protected final long applyNextBlock(int blockSize) {
-		long nextBlock = 0;
+		SequenceListener listener = this.sequenceListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		long nextBlock;
 		try {
-			if (accessFile == null) {
-				// 读写方式打开文件
-				accessFile = new RandomAccessFile(localFile, "rw");
-			}
-			// 文件指针偏移到0位置
-			accessFile.seek(0);
-			if (accessFile.length() == 0) {
-				accessFile.writeLong(blockSize);
-				nextBlock = blockSize;
-			} else {
-				// 读出当前文件sequence值,在此基础上增加指定的块大小
-				nextBlock = accessFile.readLong() + blockSize;
-				// 把新的sequence写入文件
-				accessFile.seek(0);
-				accessFile.writeLong(nextBlock);
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			if (!alwaysOpenLocalFile && accessFile != null) {
-				try {
-					accessFile.close();
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-				accessFile = null;
-			}
+			nextBlock = sequenceFile.reserve(blockSize);
+		} catch (IOException e) {
+			throw new DataAccessResourceFailureException("序列文件读写失败: " + localFile, e);
+		}
+		if (listener != null) {
+			listener.onRefill(localFile, blockSize, System.nanoTime() - start);
 		}
 		return nextBlock;
 	}
@@ -172,25 +288,31 @@ public abstract class AbstractLocalSequenceMaxValueIncrementer
 			file.createNewFile();
 		}
 		this.localFile = file.getPath();
+		LocalSequenceFile sequenceFile = new LocalSequenceFile(file);
+		sequenceFile.setAlwaysOpen(alwaysOpenLocalFile);
+		sequenceFile.setMemoryMapped(memoryMapped);
+		// 单值格式只在内存映射模式下按forceInterval刷盘
+		sequenceFile.setForceInterval(memoryMapped ? forceInterval : 0);
+		sequenceFile.setCrashSafe(crashSafe);
+		sequenceFile.setProcessShared(processShared);
+		this.sequenceFile = sequenceFile;
 	}
 
 	@Override
 	public void destroy() {
-		// 关闭打开文件
-		if (accessFile != null) {
-			try {
-				accessFile.close();
-				accessFile = null;
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		SequenceListener listener = this.sequenceListener;
+		if (listener != null) {
+			listener.onDestroy(localFile, remaining());
+		}
+		if (sequenceFile != null) {
+			sequenceFile.close();
 		}
 	}
 
 	@Override
 	public long nextLongValue() {
 		long answer = 0;
-		lock.lock();
+		lock();
 		try {
 			answer = this.currentId = getNextKey();
 		} finally {
@@ -199,6 +321,88 @@ public abstract class AbstractLocalSequenceMaxValueIncrementer
 		return answer;
 	}
 
+	/**
+	 * 在锁内获取连续count个值, 供支持连续取号的子类实现批量取号
+	 * 
+	 * @param count
+	 * @return 不支持连续取号时返回null
+	 */
+	protected final LongRange nextRange(int count) {
+		return nextRange(count, false);
+	}
+
+	/**
+	 * 在锁内获取连续值
+	 * 
+	 * @param count
+	 * @param partial
+	 *            true:当前块剩余不足count时只返回剩余部分, 不申请新块
+	 * @return 不支持连续取号时返回null
+	 */
+	protected final LongRange nextRange(int count, boolean partial) {
+		lock();
+		try {
+			LongRange range = getNextRange(count, partial);
+			if (range != null) {
+				this.currentId = range.getLast();
+			}
+			return range;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 批量取号填满ids数组, 只加一次锁
+	 * 
+	 * @param ids
+	 */
+	public void nextLongValues(long[] ids) throws DataAccessException {
+		if (ids.length == 0) {
+			return;
+		}
+		lock();
+		try {
+			LongRange range = getNextRange(ids.length, false);
+			if (range != null) {
+				range.fill(ids, 0);
+			} else {
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = getNextKey();
+				}
+			}
+			this.currentId = ids[ids.length - 1];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 加锁, 发生竞争时把等待时间通知监听
+	 */
+	private void lock() {
+		if (lock.tryLock()) {
+			return;
+		}
+		SequenceListener listener = this.sequenceListener;
+		if (listener == null) {
+			lock.lock();
+			return;
+		}
+		long start = System.nanoTime();
+		lock.lock();
+		listener.onLockWait(localFile, System.nanoTime() - start);
+	}
+
+	/**
+	 * 缓存中剩余未使用的号码个数, 关闭时这些号码会被丢弃
+	 * 
+	 * @return
+	 */
+	public long remaining() {
+		return 0;
+	}
+
 	@Override
 	public int nextIntValue() throws DataAccessException {
 		return (int) nextLongValue();
@@ -230,4 +434,16 @@ public abstract class AbstractLocalSequenceMaxValueIncrementer
 	}
 
 	protected abstract long getNextKey();
+
+	/**
+	 * 获取连续值, 已在锁内调用; 不支持连续取号的子类返回null
+	 * 
+	 * @param count
+	 * @param partial
+	 *            true:当前块剩余不足count时可以只返回剩余部分
+	 * @return
+	 */
+	protected LongRange getNextRange(int count, boolean partial) {
+		return null;
+	}
 }
@@ -0,0 +1,143 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应块大小: 根据最近几次申请序列块的时间和大小估算取号速率,
+ * 按目标申请间隔计算下一次申请的块大小, 并限制在[minBlockSize, maxBlockSize]之间.
+ * 例如目标间隔10秒, 每秒消耗5000个id, 下一次申请50000个.
+ *
+ * @author zach
+ */
+public class AdaptiveBlockSize {
+
+	/**
+	 * 最小块大小
+	 */
+	private int minBlockSize = 100;
+
+	/**
+	 * 最大块大小
+	 */
+	private int maxBlockSize = 100000;
+
+	/**
+	 * 目标申请间隔(毫秒)
+	 */
+	private long targetRefillMillis = 10000;
+
+	/**
+	 * 统计最近多少次申请
+	 */
+	private int window = 8;
+
+	/**
+	 * 最近几次申请时间(纳秒), 环形数组
+	 */
+	private long[] times;
+
+	/**
+	 * 最近几次申请的块大小, 环形数组
+	 */
+	private int[] sizes;
+
+	/**
+	 * 已记录的申请次数
+	 */
+	private long count = 0;
+
+	public AdaptiveBlockSize() {
+	}
+
+	public AdaptiveBlockSize(int minBlockSize, int maxBlockSize, long targetRefillMillis) {
+		setMinBlockSize(minBlockSize);
+		setMaxBlockSize(maxBlockSize);
+		setTargetRefillMillis(targetRefillMillis);
+	}
+
+	public int getMinBlockSize() {
+		return minBlockSize;
+	}
+
+	public void setMinBlockSize(int minBlockSize) {
+		if (minBlockSize > 0) {
+			this.minBlockSize = minBlockSize;
+		}
+	}
+
+	public int getMaxBlockSize() {
+		return maxBlockSize;
+	}
+
+	public void setMaxBlockSize(int maxBlockSize) {
+		if (maxBlockSize > 0) {
+			this.maxBlockSize = maxBlockSize;
+		}
+	}
+
+	public long getTargetRefillMillis() {
+		return targetRefillMillis;
+	}
+
+	public void setTargetRefillMillis(long targetRefillMillis) {
+		if (targetRefillMillis > 0) {
+			this.targetRefillMillis = targetRefillMillis;
+		}
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	public synchronized void setWindow(int window) {
+		if (window > 1) {
+			this.window = window;
+			this.times = null;
+			this.sizes = null;
+			this.count = 0;
+		}
+	}
+
+	/**
+	 * 计算本次申请的块大小并记录本次申请
+	 *
+	 * @param initialSize
+	 *            没有历史数据时使用的块大小
+	 * @return
+	 */
+	public synchronized int next(int initialSize) {
+		if (times == null) {
+			times = new long[window];
+			sizes = new int[window];
+		}
+		long now = System.nanoTime();
+		int size;
+		if (count == 0) {
+			size = clamp(initialSize);
+		} else {
+			// 窗口内最早一次申请到现在, 之间申请的块都已经(基本)用完
+			int records = (int) Math.min(count, window);
+			int oldest = (int) ((count - records) % window);
+			long consumed = 0;
+			for (int i = 0; i < records; i++) {
+				consumed += sizes[(oldest + i) % window];
+			}
+			long elapsed = Math.max(now - times[oldest], 1);
+			double perMillis = consumed * (double) TimeUnit.MILLISECONDS.toNanos(1) / elapsed;
+			size = clamp((long) (perMillis * targetRefillMillis));
+		}
+		int index = (int) (count % window);
+		times[index] = now;
+		sizes[index] = size;
+		count++;
+		return size;
+	}
+
+	private int clamp(long size) {
+		int max = Math.max(minBlockSize, maxBlockSize);
+		if (size < minBlockSize) {
+			return minBlockSize;
+		}
+		return size > max ? max : (int) size;
+	}
+}
@@ -0,0 +1,343 @@
+package cn.com.zach.tools.increment;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * 多序列批量申请: 收集一个短时间窗口内多个序列的申请, 用一条
+ * SELECT nextblock(?, ?), nextblock(?, ?), nextval(?) ... 语句一次访问数据库完成, 再把结果分给各个等待的调用者.
+ * 同一序列的多个nextblock申请合并为一次, 按申请顺序切分. 依赖mysql.sequence.sql中的sys_sequence表和函数.
+ *
+ * @author zach
+ */
+public class BatchSequenceFetcher implements InitializingBean, DisposableBean {
+
+	/**
+	 * 数据源
+	 */
+	private DataSource dataSource;
+
+	/**
+	 * 收集申请的时间窗口(毫秒)
+	 */
+	private long windowMillis = 2;
+
+	/**
+	 * 每条语句最多合并的申请数
+	 */
+	private int maxBatchSize = 64;
+
+	/**
+	 * 调用者等待申请完成的最长时间(毫秒)
+	 */
+	private long timeoutMillis = 30000;
+
+	/**
+	 * 等待处理的申请
+	 */
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+	/**
+	 * 批量处理线程
+	 */
+	private Thread dispatcher;
+
+	/**
+	 * 是否已关闭
+	 */
+	private volatile boolean closed = false;
+
+	public BatchSequenceFetcher() {
+	}
+
+	public BatchSequenceFetcher(DataSource dataSource) {
+		this.dataSource = dataSource;
+		afterPropertiesSet();
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	public void setWindowMillis(long windowMillis) {
+		if (windowMillis >= 0) {
+			this.windowMillis = windowMillis;
+		}
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize > 0) {
+			this.maxBatchSize = maxBatchSize;
+		}
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public void setTimeoutMillis(long timeoutMillis) {
+		if (timeoutMillis > 0) {
+			this.timeoutMillis = timeoutMillis;
+		}
+	}
+
+	@Override
+	public synchronized void afterPropertiesSet() {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("dataSource不能为空");
+		}
+		if (dispatcher == null) {
+			dispatcher = new Thread() {
+				@Override
+				public void run() {
+					dispatch();
+				}
+			};
+			dispatcher.setDaemon(true);
+			dispatcher.setName("Batch-Sequence-Fetcher");
+			dispatcher.start();
+		}
+	}
+
+	/**
+	 * 申请序列块, 等待批量语句执行完成
+	 *
+	 * @param name
+	 *            序列名称
+	 * @param blockSize
+	 *            块大小
+	 * @return 序列块最大值, 与select nextblock(name, blockSize)一致
+	 */
+	public long nextBlock(String name, int blockSize) throws DataAccessException {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("块大小必须大于0: " + blockSize);
+		}
+		return await(submit(new Request(name, blockSize)));
+	}
+
+	/**
+	 * 按sys_sequence表中的步长获取下一个值
+	 *
+	 * @param name
+	 *            序列名称
+	 * @return 与select nextval(name)一致
+	 */
+	public long nextValue(String name) throws DataAccessException {
+		return await(submit(new Request(name, 0)));
+	}
+
+	/**
+	 * 提交申请, 返回结果future
+	 *
+	 * @param request
+	 * @return
+	 */
+	private CompletableFuture<Long> submit(Request request) {
+		if (closed) {
+			throw new DataAccessResourceFailureException("批量序列申请已关闭");
+		}
+		if (dispatcher == null) {
+			afterPropertiesSet();
+		}
+		queue.add(request);
+		if (closed && queue.remove(request)) {
+			// 处理线程已经退出, 不会再取到这个申请
+			request.result.completeExceptionally(new DataAccessResourceFailureException("批量序列申请已关闭"));
+		}
+		return request.result;
+	}
+
+	private long await(CompletableFuture<Long> result) {
+		try {
+			return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new DataAccessResourceFailureException("等待序列申请超时: " + timeoutMillis + "毫秒", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataAccessResourceFailureException("等待序列申请被中断", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DataAccessException) {
+				throw (DataAccessException) cause;
+			}
+			throw new DataAccessResourceFailureException("自增列获取失败", cause);
+		}
+	}
+
+	/**
+	 * 批量处理线程: 取到第一个申请后在时间窗口内继续收集, 然后一次执行
+	 */
+	private void dispatch() {
+		List<Request> batch = new ArrayList<Request>();
+		while (!closed) {
+			try {
+				Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+				while (batch.size() < maxBatchSize) {
+					long wait = deadline - System.nanoTime();
+					Request request = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+					if (request == null) {
+						break;
+					}
+					batch.add(request);
+				}
+				execute(batch);
+			} catch (InterruptedException e) {
+				// 已从队列取出的申请不会再执行
+				fail(batch, new DataAccessResourceFailureException("批量序列申请已关闭"));
+				break;
+			} catch (RuntimeException e) {
+				fail(batch, e);
+			} finally {
+				batch.clear();
+			}
+		}
+		List<Request> remaining = new ArrayList<Request>();
+		queue.drainTo(remaining);
+		fail(remaining, new DataAccessResourceFailureException("批量序列申请已关闭"));
+	}
+
+	/**
+	 * 执行一批申请
+	 *
+	 * @param batch
+	 */
+	private void execute(List<Request> batch) {
+		// 同一序列的nextblock申请合并, nextval申请单独执行
+		List<List<Request>> groups = new ArrayList<List<Request>>();
+		Map<String, List<Request>> blocks = new LinkedHashMap<String, List<Request>>();
+		for (Request request : batch) {
+			if (request.size == 0) {
+				List<Request> single = new ArrayList<Request>(1);
+				single.add(request);
+				groups.add(single);
+				continue;
+			}
+			List<Request> group = blocks.get(request.name);
+			if (group == null) {
+				group = new ArrayList<Request>();
+				blocks.put(request.name, group);
+				groups.add(group);
+			}
+			group.add(request);
+		}
+		StringBuilder sql = new StringBuilder("SELECT ");
+		for (int i = 0; i < groups.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(groups.get(i).get(0).size == 0 ? "nextval(?)" : "nextblock(?, ?)");
+		}
+		Connection con = DataSourceUtils.getConnection(dataSource);
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = con.prepareStatement(sql.toString());
+			DataSourceUtils.applyTransactionTimeout(stmt, dataSource);
+			int index = 1;
+			for (List<Request> group : groups) {
+				stmt.setString(index++, group.get(0).name);
+				if (group.get(0).size > 0) {
+					stmt.setLong(index++, total(group));
+				}
+			}
+			rs = stmt.executeQuery();
+			if (!rs.next()) {
+				throw new DataAccessResourceFailureException("自增列获取失败: 没有返回结果");
+			}
+			for (int i = 0; i < groups.size(); i++) {
+				List<Request> group = groups.get(i);
+				long max = rs.getLong(i + 1);
+				// 合并申请的块按申请顺序切分, nextval直接返回
+				long end = max - total(group);
+				for (Request request : group) {
+					end += request.size;
+					request.result.complete(request.size == 0 ? max : end);
+				}
+			}
+		} catch (SQLException ex) {
+			fail(batch, new DataAccessResourceFailureException("自增列获取失败", ex));
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(stmt);
+			DataSourceUtils.releaseConnection(con, dataSource);
+		}
+	}
+
+	private static long total(List<Request> group) {
+		long total = 0;
+		for (Request request : group) {
+			total += request.size;
+		}
+		return total;
+	}
+
+	private static void fail(List<Request> requests, Throwable e) {
+		for (Request request : requests) {
+			request.result.completeExceptionally(e);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		closed = true;
+		Thread thread = dispatcher;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * 一次申请, size为0表示nextval
+	 */
+	private static final class Request {
+
+		private final String name;
+
+		private final int size;
+
+		private final CompletableFuture<Long> result = new CompletableFuture<Long>();
+
+		Request(String name, int size) {
+			this.name = name;
+			this.size = size;
+		}
+	}
+}
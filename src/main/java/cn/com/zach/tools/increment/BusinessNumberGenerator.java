@@ -0,0 +1,228 @@
+package cn.com.zach.tools.increment;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+/**
+ * 业务编号生成: 前缀 + 日期 + 节点编码 + 补0序列号, 例如订单号P201801011200000100000123.
+ * 序列号来自任意DataFieldMaxValueIncrementer; 日期部分按秒缓存, 每秒只格式化一次, 每个编号只分配一个char[]和一个String.
+ * 序列号超过sequenceLength位时取低位, 请保证同一日期粒度内序列号不会循环.
+ *
+ * @author zach
+ */
+public class BusinessNumberGenerator implements DataFieldMaxValueIncrementer, InitializingBean {
+
+	/**
+	 * 默认日期格式, 精确到秒
+	 */
+	public static final String DEFAULT_DATE_PATTERN = "yyyyMMddHHmmss";
+
+	/**
+	 * 序列号来源
+	 */
+	private DataFieldMaxValueIncrementer incrementer;
+
+	/**
+	 * 编号前缀
+	 */
+	private String prefix = "";
+
+	/**
+	 * 日期格式, 最小精确到秒
+	 */
+	private String datePattern = DEFAULT_DATE_PATTERN;
+
+	/**
+	 * 时区
+	 */
+	private TimeZone timeZone = TimeZone.getDefault();
+
+	/**
+	 * 节点编码
+	 */
+	private String nodeCode = "";
+
+	/**
+	 * 序列号位数, 不足前面补0
+	 */
+	private int sequenceLength = 8;
+
+	/**
+	 * 编号最大长度, 对应数据库字段长度
+	 */
+	private int maxLength = 30;
+
+	/**
+	 * 序列号取模
+	 */
+	private long sequenceModulus;
+
+	/**
+	 * 当前秒的编号头部缓存: 前缀 + 日期 + 节点编码
+	 */
+	private volatile Head head;
+
+	public BusinessNumberGenerator() {
+	}
+
+	public BusinessNumberGenerator(DataFieldMaxValueIncrementer incrementer, String prefix, String nodeCode) {
+		this.incrementer = incrementer;
+		this.prefix = prefix;
+		this.nodeCode = nodeCode;
+		afterPropertiesSet();
+	}
+
+	public DataFieldMaxValueIncrementer getIncrementer() {
+		return incrementer;
+	}
+
+	public void setIncrementer(DataFieldMaxValueIncrementer incrementer) {
+		this.incrementer = incrementer;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public void setPrefix(String prefix) {
+		this.prefix = prefix == null ? "" : prefix;
+	}
+
+	public String getDatePattern() {
+		return datePattern;
+	}
+
+	public void setDatePattern(String datePattern) {
+		this.datePattern = datePattern;
+	}
+
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+
+	public void setTimeZone(TimeZone timeZone) {
+		this.timeZone = timeZone;
+	}
+
+	public String getNodeCode() {
+		return nodeCode;
+	}
+
+	public void setNodeCode(String nodeCode) {
+		this.nodeCode = nodeCode == null ? "" : nodeCode;
+	}
+
+	public int getSequenceLength() {
+		return sequenceLength;
+	}
+
+	public void setSequenceLength(int sequenceLength) {
+		this.sequenceLength = sequenceLength;
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	public void setMaxLength(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (incrementer == null) {
+			throw new IllegalArgumentException("incrementer不能为空");
+		}
+		if (datePattern == null || datePattern.indexOf('S') >= 0) {
+			throw new IllegalArgumentException("日期格式最小精确到秒: " + datePattern);
+		}
+		if (sequenceLength < 1 || sequenceLength > 18) {
+			throw new IllegalArgumentException("序列号位数必须在1到18之间: " + sequenceLength);
+		}
+		long modulus = 1;
+		for (int i = 0; i < sequenceLength; i++) {
+			modulus *= 10;
+		}
+		this.sequenceModulus = modulus;
+		this.head = createHead(System.currentTimeMillis() / 1000);
+		int length = head.chars.length + sequenceLength;
+		if (length > maxLength) {
+			throw new IllegalArgumentException("编号长度" + length + "超过最大长度" + maxLength);
+		}
+	}
+
+	/**
+	 * 格式化指定秒的编号头部, 每秒调用一次
+	 *
+	 * @param second
+	 * @return
+	 */
+	private Head createHead(long second) {
+		SimpleDateFormat format = new SimpleDateFormat(datePattern);
+		format.setTimeZone(timeZone);
+		String text = prefix + format.format(new Date(second * 1000)) + nodeCode;
+		return new Head(second, text.toCharArray());
+	}
+
+	/**
+	 * 生成下一个业务编号
+	 *
+	 * @return
+	 */
+	public String nextNumber() {
+		long sequence = incrementer.nextLongValue();
+		long second = System.currentTimeMillis() / 1000;
+		Head current = head;
+		if (current.second != second) {
+			current = createHead(second);
+			head = current;
+		}
+		int headLength = current.chars.length;
+		char[] buf = new char[headLength + sequenceLength];
+		System.arraycopy(current.chars, 0, buf, 0, headLength);
+		long value = sequence % sequenceModulus;
+		if (value < 0) {
+			value += sequenceModulus;
+		}
+		for (int i = buf.length - 1; i >= headLength; i--) {
+			buf[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return new String(buf);
+	}
+
+	@Override
+	public String nextStringValue() throws DataAccessException {
+		return nextNumber();
+	}
+
+	@Override
+	public int nextIntValue() throws DataAccessException {
+		throw new RuntimeException("业务编号不支持int类型生成");
+	}
+
+	@Override
+	public long nextLongValue() throws DataAccessException {
+		throw new RuntimeException("业务编号不支持long类型生成");
+	}
+
+	/**
+	 * 编号头部缓存
+	 */
+	private static final class Head {
+
+		private final long second;
+
+		private final char[] chars;
+
+		Head(long second, char[] chars) {
+			this.second = second;
+			this.chars = chars;
+		}
+	}
+}
@@ -0,0 +1,376 @@
+package cn.com.zach.tools.increment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.zip.CRC32;
+
+/**
+ * 防崩溃的序列文件: 两个槽位交替写入, 每个槽位保存 值(8) + 代数(8) + CRC32(4) + 填充(4).
+ * 启动时取校验通过且代数最大的槽位, 写到一半断电只会损坏正在写的槽位, 另一个槽位仍是上一次的完整值.
+ * 刷盘模式下序列块只有在刷盘完成后才返回; 并发申请共用一次写入和force(组提交).
+ * 多进程共享模式下每次申请都加文件锁, 重新读取槽位后写入并刷盘, 不做组提交.
+ * 兼容旧格式: 只有8字节的文件作为初始值读取, 打开时先把该值带校验写入槽位0并刷盘, 之后才写槽位1;
+ * 旧值与槽位0的值字段位置相同, 转换写到一半断电时两个槽位都校验失败, 此时槽位0的代数字段仍为0, 按旧格式读取前8字节.
+ *
+ * @author zach
+ */
+public class DualSlotSequenceFile implements Closeable {
+
+	/**
+	 * 槽位长度
+	 */
+	private static final int SLOT_LENGTH = 24;
+
+	/**
+	 * 旧格式文件长度
+	 */
+	private static final int LEGACY_LENGTH = 8;
+
+	/**
+	 * 序列文件
+	 */
+	private final File file;
+
+	/**
+	 * 文件通道
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * 写槽位用的缓冲区, 在锁内使用
+	 */
+	private final ByteBuffer slotBuffer = ByteBuffer.allocate(SLOT_LENGTH);
+
+	/**
+	 * 校验和计算, 在锁内使用
+	 */
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * 是否刷盘, false时只写入操作系统缓存
+	 */
+	private final boolean force;
+
+	/**
+	 * 是否多进程共享文件
+	 */
+	private final boolean processShared;
+
+	/**
+	 * 当前值
+	 */
+	private long value;
+
+	/**
+	 * 当前代数, 每次写入加1
+	 */
+	private long generation;
+
+	/**
+	 * 已刷盘的值
+	 */
+	private long durableValue;
+
+	/**
+	 * 是否有线程正在刷盘
+	 */
+	private boolean forcing = false;
+
+	/**
+	 * 刷盘次数
+	 */
+	private long forceCount = 0;
+
+	/**
+	 * 刷盘等待和通知使用的锁
+	 */
+	private final Object forceLock = new Object();
+
+	/**
+	 * 打开序列文件并恢复最新的有效值
+	 *
+	 * @param file
+	 *            序列文件
+	 * @param force
+	 *            是否在返回序列块前刷盘
+	 * @throws IOException
+	 */
+	public DualSlotSequenceFile(File file, boolean force) throws IOException {
+		this(file, force, false);
+	}
+
+	/**
+	 * 打开序列文件并恢复最新的有效值
+	 *
+	 * @param file
+	 *            序列文件
+	 * @param force
+	 *            是否在返回序列块前刷盘
+	 * @param processShared
+	 *            是否多进程共享文件
+	 * @throws IOException
+	 */
+	@SuppressWarnings("resource")
+	public DualSlotSequenceFile(File file, boolean force, boolean processShared) throws IOException {
+		this.file = file;
+		this.force = force;
+		this.processShared = processShared;
+		this.channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			if (processShared) {
+				// 转换旧格式时会写文件, 与其他进程互斥
+				FileLock lock = channel.lock(0, 2 * SLOT_LENGTH, false);
+				try {
+					recover();
+				} finally {
+					lock.release();
+				}
+			} else {
+				recover();
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 读取两个槽位, 取校验通过且代数最大的一个; 空文件, 旧格式文件和转换中断的文件先转换为双槽位格式
+	 *
+	 * @throws IOException
+	 */
+	private void recover() throws IOException {
+		long length = channel.size();
+		boolean found = false;
+		for (int slot = 0; slot < 2; slot++) {
+			if (length < (slot + 1) * SLOT_LENGTH) {
+				break;
+			}
+			slotBuffer.clear();
+			readFully(slotBuffer, slot * SLOT_LENGTH);
+			long slotValue = slotBuffer.getLong(0);
+			long slotGeneration = slotBuffer.getLong(8);
+			if (checksum(slotValue, slotGeneration) != slotBuffer.getInt(16)) {
+				continue;
+			}
+			if (!found || slotGeneration > generation) {
+				this.value = slotValue;
+				this.generation = slotGeneration;
+				found = true;
+			}
+		}
+		if (!found) {
+			migrate(length);
+		}
+		this.durableValue = value;
+	}
+
+	/**
+	 * 没有有效槽位时按旧格式读取前8字节, 带校验写入槽位0(代数0)并刷盘.
+	 * 只有槽位0的代数字段为0时才允许: 说明槽位0从未成功写入过双槽位数据, 前8字节仍是旧值; 否则是两个槽位都已损坏
+	 *
+	 * @param length
+	 *            文件长度
+	 * @throws IOException
+	 */
+	private void migrate(long length) throws IOException {
+		long legacyValue = 0;
+		if (length >= LEGACY_LENGTH) {
+			ByteBuffer legacy = ByteBuffer.allocate(2 * LEGACY_LENGTH);
+			if (length < legacy.capacity()) {
+				legacy.limit(LEGACY_LENGTH);
+			}
+			readFully(legacy, 0);
+			if (legacy.limit() > LEGACY_LENGTH && legacy.getLong(LEGACY_LENGTH) != 0) {
+				throw new IOException("序列文件两个槽位都已损坏: " + file);
+			}
+			legacyValue = legacy.getLong(0);
+		} else if (length > 0) {
+			throw new IOException("序列文件两个槽位都已损坏: " + file);
+		}
+		this.value = legacyValue;
+		this.generation = 0;
+		writeSlot(legacyValue, 0);
+		channel.force(false);
+	}
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("序列文件长度不足: " + file);
+			}
+		}
+	}
+
+	private int checksum(long slotValue, long slotGeneration) {
+		crc.reset();
+		for (int i = 56; i >= 0; i -= 8) {
+			crc.update((int) (slotValue >>> i));
+		}
+		for (int i = 56; i >= 0; i -= 8) {
+			crc.update((int) (slotGeneration >>> i));
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * 申请序列块, 刷盘模式下等待包含本次申请的槽位刷盘后返回
+	 *
+	 * @param size
+	 *            块大小
+	 * @return 序列块最大值
+	 * @throws IOException
+	 */
+	public long reserve(int size) throws IOException {
+		if (processShared) {
+			return reserveShared(size);
+		}
+		long max;
+		synchronized (this) {
+			max = value + size;
+			value = max;
+			if (!force) {
+				writeSlot(max);
+				return max;
+			}
+		}
+		awaitDurable(max);
+		return max;
+	}
+
+	/**
+	 * 多进程共享模式: 加文件锁, 重新读取其他进程写入的槽位, 写入后刷盘再释放文件锁
+	 *
+	 * @param size
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized long reserveShared(int size) throws IOException {
+		FileLock lock = channel.lock(0, 2 * SLOT_LENGTH, false);
+		try {
+			recover();
+			long max = value + size;
+			value = max;
+			writeSlot(max);
+			if (force) {
+				channel.force(false);
+			}
+			durableValue = max;
+			return max;
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * 把值写入下一个槽位, 在锁内调用
+	 *
+	 * @param slotValue
+	 * @throws IOException
+	 */
+	private void writeSlot(long slotValue) throws IOException {
+		long written = generation + 1;
+		writeSlot(slotValue, written);
+		generation = written;
+	}
+
+	/**
+	 * 按代数写入槽位: 偶数代写槽位0, 奇数代写槽位1
+	 *
+	 * @param slotValue
+	 * @param slotGeneration
+	 * @throws IOException
+	 */
+	private void writeSlot(long slotValue, long slotGeneration) throws IOException {
+		slotBuffer.clear();
+		slotBuffer.putLong(slotValue).putLong(slotGeneration).putInt(checksum(slotValue, slotGeneration)).putInt(0);
+		slotBuffer.flip();
+		long position = (slotGeneration & 1) * SLOT_LENGTH;
+		while (slotBuffer.hasRemaining()) {
+			channel.write(slotBuffer, position + slotBuffer.position());
+		}
+	}
+
+	/**
+	 * 组提交: 同一时刻只有一个线程写槽位并刷盘, 写入的是当时最新的值, 覆盖所有在此之前的申请;
+	 * 其他线程等待, 刷盘完成后如果已覆盖自己的申请直接返回.
+	 * 只有刷盘线程写槽位, 所以被覆盖的槽位总是比另一个槽位旧, 另一个槽位已刷盘.
+	 *
+	 * @param target
+	 *            需要持久化的值
+	 * @throws IOException
+	 */
+	private void awaitDurable(long target) throws IOException {
+		synchronized (forceLock) {
+			while (durableValue < target && forcing) {
+				try {
+					forceLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("等待序列文件刷盘被中断", e);
+				}
+			}
+			if (durableValue >= target) {
+				return;
+			}
+			forcing = true;
+		}
+		long snapshot = target;
+		boolean success = false;
+		try {
+			synchronized (this) {
+				snapshot = value;
+				writeSlot(snapshot);
+			}
+			channel.force(false);
+			success = true;
+		} finally {
+			synchronized (forceLock) {
+				forcing = false;
+				forceCount++;
+				if (success && snapshot > durableValue) {
+					durableValue = snapshot;
+				}
+				forceLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * 当前已分配的最大值
+	 *
+	 * @return
+	 */
+	public synchronized long currentValue() {
+		return value;
+	}
+
+	/**
+	 * 当前代数
+	 *
+	 * @return
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * 刷盘次数
+	 *
+	 * @return
+	 */
+	public long getForceCount() {
+		synchronized (forceLock) {
+			return forceCount;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
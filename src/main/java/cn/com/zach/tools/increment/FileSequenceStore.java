@@ -0,0 +1,155 @@
+package cn.com.zach.tools.increment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+/**
+ * 本地文件序列存储: 目录下每个序列一个文件"序列名.sequence.dat", 读写由{@link LocalSequenceFile}完成, 格式与{@link AbstractLocalSequenceMaxValueIncrementer}相同.
+ * 每个序列文件单独加锁, 文件打开后一直保持打开. 多个进程共享目录时开启processShared.
+ *
+ * @author zach
+ */
+public class FileSequenceStore implements SequenceStore, InitializingBean, DisposableBean {
+
+	/**
+	 * 默认sequence存储目录在classpath目录下
+	 */
+	private static final String DEFAULT_DIRECTORY = "classpath:/";
+
+	/**
+	 * 序列文件后缀
+	 */
+	private static final String SUFFIX = ".sequence.dat";
+
+	/**
+	 * 序列文件目录
+	 */
+	private String directory = null;
+
+	/**
+	 * 每次申请后是否刷盘
+	 */
+	private boolean force = false;
+
+	/**
+	 * 是否使用防崩溃的双槽位格式, 开启后序列块刷盘后才返回, 并发申请组提交; 开启后不能再切换回单值格式
+	 */
+	private boolean crashSafe = false;
+
+	/**
+	 * 是否多进程共享序列文件, 开启后每次申请加文件锁并重新读取文件
+	 */
+	private boolean processShared = false;
+
+	/**
+	 * 已打开的序列文件
+	 */
+	private final ConcurrentMap<String, LocalSequenceFile> files = new ConcurrentHashMap<String, LocalSequenceFile>();
+
+	/**
+	 * 解析后的目录
+	 */
+	private File baseDirectory;
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	public boolean isForce() {
+		return force;
+	}
+
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
+	public boolean isCrashSafe() {
+		return crashSafe;
+	}
+
+	public void setCrashSafe(boolean crashSafe) {
+		this.crashSafe = crashSafe;
+	}
+
+	public boolean isProcessShared() {
+		return processShared;
+	}
+
+	public void setProcessShared(boolean processShared) {
+		this.processShared = processShared;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		ResourceLoader loader = new DefaultResourceLoader();
+		if (directory == null || directory.length() == 0) {
+			directory = DEFAULT_DIRECTORY;
+		}
+		Resource resource = loader.getResource(directory);
+		if (!resource.exists()) {
+			resource = loader.getResource(DEFAULT_DIRECTORY);
+		}
+		File file = resource.getFile();
+		if (!file.isDirectory()) {
+			throw new IOException("序列文件目录不存在: " + file);
+		}
+		this.baseDirectory = file;
+		this.directory = file.getPath();
+	}
+
+	@Override
+	public LongRange reserve(String name, int size) throws DataAccessException {
+		if (size < 1) {
+			throw new IllegalArgumentException("块大小必须大于0: " + size);
+		}
+		try {
+			long max = file(name).reserve(size);
+			return new LongRange(max - size + 1, size);
+		} catch (IOException e) {
+			throw new DataAccessResourceFailureException("序列文件读写失败: " + name, e);
+		}
+	}
+
+	private LocalSequenceFile file(String name) {
+		LocalSequenceFile file = files.get(name);
+		if (file == null) {
+			if (baseDirectory == null) {
+				throw new IllegalStateException("序列文件目录未初始化");
+			}
+			if (!name.matches("[A-Za-z0-9_.\\-]+")) {
+				throw new IllegalArgumentException("序列名称只能包含字母, 数字, '_', '.', '-': " + name);
+			}
+			LocalSequenceFile created = new LocalSequenceFile(new File(baseDirectory, name + SUFFIX));
+			created.setForceInterval(force ? 1 : 0);
+			created.setCrashSafe(crashSafe);
+			created.setProcessShared(processShared);
+			file = files.putIfAbsent(name, created);
+			if (file == null) {
+				file = created;
+			}
+		}
+		return file;
+	}
+
+	@Override
+	public void destroy() {
+		for (LocalSequenceFile file : files.values()) {
+			file.close();
+		}
+		files.clear();
+	}
+}
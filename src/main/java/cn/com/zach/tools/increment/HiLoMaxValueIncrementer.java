@@ -1,33 +1,96 @@
-
 package cn.com.zach.tools.increment;
 
 /**
  * hilo算法: id=hi*(max_lo+1)+lo, lo值在1到max_lo直接循环, lo值每循环一圈，hi值就增一.
- * 
+ * 一个hi对应的id区间作为一个号段, 段内取号只做一次原子自增, 不加锁;
+ * lo快用完时由后台线程从文件申请下一个hi, 取号线程不等待文件写入.
+ *
  * @author zach
  */
-public class HiLoMaxValueIncrementer extends AbstractLocalSequenceMaxValueIncrementer {
+public class HiLoMaxValueIncrementer extends AbstractLocalSequenceMaxValueIncrementer implements SequenceWarmUp {
+
+	/**
+	 * 预取阈值, 当前hi剩余lo比例低于该值时后台申请下一个hi
+	 */
+	private double prefetchThreshold = SegmentBuffer.DEFAULT_PREFETCH_THRESHOLD;
+
+	/**
+	 * 每个hi对应一个号段
+	 */
+	private volatile SegmentBuffer segmentBuffer;
+
+	/**
+	 * @return the prefetchThreshold
+	 */
+	public double getPrefetchThreshold() {
+		return prefetchThreshold;
+	}
 
-	private long hi = 1;
+	/**
+	 * @param prefetchThreshold
+	 *            the prefetchThreshold to set
+	 */
+	public void setPrefetchThreshold(double prefetchThreshold) {
+		this.prefetchThreshold = prefetchThreshold;
+	}
 
-	private long lo = 1;
+	/**
+	 * 不加锁取号
+	 */
+	@Override
+	public long nextLongValue() {
+		return segmentBuffer.nextId();
+	}
+
+	/**
+	 * 当前值从正在使用的号段读取, 取号时不写共享变量
+	 */
+	@Override
+	public long currentLongValue() {
+		SegmentBuffer buffer = this.segmentBuffer;
+		return buffer == null ? super.currentLongValue() : buffer.lastIssued();
+	}
+
+	@Override
+	public void warmUp() {
+		segmentBuffer.warmUp();
+	}
+
+	@Override
+	public long remaining() {
+		SegmentBuffer buffer = this.segmentBuffer;
+		return buffer == null ? 0 : buffer.remaining() + buffer.prefetched();
+	}
 
 	public long getNextKey() {
-		long answer = hi * (blockSize + 1) + lo;
-		if (lo > blockSize) {
-			lo = 1;
-			hi++;
-			applyNextBlock(1);
-		} else {
-			lo++;
-		}
-		return answer;
+		return segmentBuffer.nextId();
+	}
+
+	/**
+	 * 从文件申请下一个hi, 返回hi对应的号段: hi*(max_lo+1)+1 到 hi*(max_lo+1)+max_lo+1
+	 *
+	 * @return
+	 */
+	private synchronized Segment nextHi() {
+		// 使用文件中的值, 多进程共享文件时hi不会重复
+		long hi = applyNextBlock(1);
+		long base = hi * (blockSize + 1);
+		return new Segment(base + 1, base + blockSize + 1);
 	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		// 判断设置步长是否超过块大小
 		super.afterPropertiesSet();
-		hi = applyNextBlock(blockSize);
+		SegmentBuffer buffer = new SegmentBuffer(new SegmentBuffer.SegmentLoader() {
+			@Override
+			public Segment load(int size) {
+				// 号段大小固定为一个hi
+				return nextHi();
+			}
+		}, blockSize + 1);
+		buffer.setPrefetchThreshold(prefetchThreshold);
+		buffer.setListener(getSequenceListener(), getLocalFile());
+		this.segmentBuffer = buffer;
 	}
 }
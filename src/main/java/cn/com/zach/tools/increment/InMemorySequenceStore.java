@@ -0,0 +1,66 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存序列存储, 不持久化, 重启后从初始值开始; 用于测试和压测号段缓存
+ *
+ * @author zach
+ */
+public class InMemorySequenceStore implements SequenceStore {
+
+	/**
+	 * 序列初始值, 第一个块从initialValue + 1开始
+	 */
+	private long initialValue = 0;
+
+	/**
+	 * 各序列已分配的最大值
+	 */
+	private final ConcurrentMap<String, AtomicLong> sequences = new ConcurrentHashMap<String, AtomicLong>();
+
+	public InMemorySequenceStore() {
+	}
+
+	public InMemorySequenceStore(long initialValue) {
+		this.initialValue = initialValue;
+	}
+
+	public long getInitialValue() {
+		return initialValue;
+	}
+
+	public void setInitialValue(long initialValue) {
+		this.initialValue = initialValue;
+	}
+
+	@Override
+	public LongRange reserve(String name, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("块大小必须大于0: " + size);
+		}
+		AtomicLong sequence = sequences.get(name);
+		if (sequence == null) {
+			AtomicLong created = new AtomicLong(initialValue);
+			sequence = sequences.putIfAbsent(name, created);
+			if (sequence == null) {
+				sequence = created;
+			}
+		}
+		long max = sequence.addAndGet(size);
+		return new LongRange(max - size + 1, size);
+	}
+
+	/**
+	 * 获取序列当前已分配的最大值
+	 *
+	 * @param name
+	 * @return
+	 */
+	public long currentValue(String name) {
+		AtomicLong sequence = sequences.get(name);
+		return sequence == null ? initialValue : sequence.get();
+	}
+}
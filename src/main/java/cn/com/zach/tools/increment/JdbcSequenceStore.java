@@ -0,0 +1,93 @@
+package cn.com.zach.tools.increment;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * 数据库序列存储, 使用mysql.sequence.sql中的nextblock函数申请序列块; 设置batchFetcher后多个序列合并为一条语句
+ *
+ * @author zach
+ */
+public class JdbcSequenceStore implements SequenceStore {
+
+	/**
+	 * 数据源
+	 */
+	private DataSource dataSource;
+
+	/**
+	 * 多序列批量申请
+	 */
+	private BatchSequenceFetcher batchFetcher;
+
+	public JdbcSequenceStore() {
+	}
+
+	public JdbcSequenceStore(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public BatchSequenceFetcher getBatchFetcher() {
+		return batchFetcher;
+	}
+
+	public void setBatchFetcher(BatchSequenceFetcher batchFetcher) {
+		this.batchFetcher = batchFetcher;
+	}
+
+	@Override
+	public LongRange reserve(String name, int size) throws DataAccessException {
+		if (size < 1) {
+			throw new IllegalArgumentException("块大小必须大于0: " + size);
+		}
+		long max = batchFetcher != null ? batchFetcher.nextBlock(name, size) : nextBlock(name, size);
+		return new LongRange(max - size + 1, size);
+	}
+
+	/**
+	 * 执行select nextblock(name, size)
+	 *
+	 * @param name
+	 * @param size
+	 * @return 序列块最大值
+	 */
+	private long nextBlock(String name, int size) throws DataAccessException {
+		Connection con = DataSourceUtils.getConnection(dataSource);
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = con.prepareStatement("SELECT nextblock(?, ?) AS nextkey");
+			DataSourceUtils.applyTransactionTimeout(stmt, dataSource);
+			stmt.setString(1, name);
+			stmt.setInt(2, size);
+			rs = stmt.executeQuery();
+			if (!rs.next()) {
+				throw new DataAccessResourceFailureException("自增列获取失败: 没有返回结果");
+			}
+			return rs.getLong(1);
+		} catch (SQLException ex) {
+			throw new DataAccessResourceFailureException("自增列获取失败", ex);
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(stmt);
+			DataSourceUtils.releaseConnection(con, dataSource);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁耗时直方图: 按2的幂分桶(纳秒), 第i个桶记录[2^(i-1), 2^i)范围内的值, 记录只做原子自增, 不分配对象.
+ * 百分位按桶上界估算, 误差在2倍以内, 用于观察数量级.
+ *
+ * @author zach
+ */
+public class LatencyHistogram {
+
+	/**
+	 * 桶个数, 覆盖全部long范围
+	 */
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录一个值
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		long value = nanos < 0 ? 0 : nanos;
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * 合并另一个直方图的数据, 用于汇总每个线程单独记录的直方图
+	 *
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.buckets.get(i);
+			if (n > 0) {
+				buckets.addAndGet(i, n);
+			}
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		long otherMax = other.max.get();
+		long current = max.get();
+		while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+			current = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return total.get();
+	}
+
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	/**
+	 * 平均值(纳秒)
+	 *
+	 * @return
+	 */
+	public long getMeanNanos() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / n;
+	}
+
+	/**
+	 * 百分位估算值(纳秒), 返回所在桶的上界, 不超过最大值
+	 *
+	 * @param percentile
+	 *            0到100
+	 * @return
+	 */
+	public long getPercentileNanos(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank && seen > 0) {
+				long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+				return Math.min(upper, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + getMeanNanos() + "ns, p50=" + getPercentileNanos(50) + "ns, p99="
+				+ getPercentileNanos(99) + "ns, max=" + getMaxNanos() + "ns";
+	}
+}
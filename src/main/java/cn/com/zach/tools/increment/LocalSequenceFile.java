@@ -0,0 +1,318 @@
+package cn.com.zach.tools.increment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 单个本地序列文件的块申请, {@link AbstractLocalSequenceMaxValueIncrementer}和{@link FileSequenceStore}共用.
+ * 存储格式: 默认文件只保存一个long, 读出后加块大小写回; memoryMapped时映射文件前8字节, 申请只是一次内存写入;
+ * crashSafe时使用{@link DualSlotSequenceFile}, 块刷盘后才返回. processShared时申请加文件锁并重新读取文件.
+ * 属性在第一次申请前设置; 读写失败抛出IOException, 由调用方转换为DataAccessException.
+ *
+ * @author zach
+ */
+public class LocalSequenceFile implements Closeable {
+
+	/**
+	 * 多进程共享模式下同一jvm内访问同一文件的锁, FileChannel.lock不能在同一jvm内重复加锁
+	 */
+	private static final ConcurrentMap<String, Object> FILE_LOCKS = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * 多进程共享模式下文件锁的范围, 覆盖单值和双槽位格式
+	 */
+	private static final long LOCK_REGION = 64;
+
+	/**
+	 * 序列文件
+	 */
+	private final File file;
+
+	/**
+	 * 是否一直打开文件, false:每次写入后关闭
+	 */
+	private boolean alwaysOpen = true;
+
+	/**
+	 * 是否使用内存映射文件
+	 */
+	private boolean memoryMapped = false;
+
+	/**
+	 * 刷盘策略: 1:每个块都刷盘, N:每N个块刷盘一次, 0:从不主动刷盘; 双槽位格式总是刷盘
+	 */
+	private int forceInterval = 0;
+
+	/**
+	 * 是否使用防崩溃的双槽位格式
+	 */
+	private boolean crashSafe = false;
+
+	/**
+	 * 是否多进程共享文件
+	 */
+	private boolean processShared = false;
+
+	/**
+	 * 未刷盘的块数
+	 */
+	private int unforcedBlocks = 0;
+
+	/**
+	 * 写sequence文件
+	 */
+	private RandomAccessFile accessFile = null;
+
+	/**
+	 * 内存映射文件通道
+	 */
+	private FileChannel mappedChannel = null;
+
+	/**
+	 * sequence文件映射内存
+	 */
+	private MappedByteBuffer mappedBuffer = null;
+
+	/**
+	 * 双槽位sequence文件
+	 */
+	private volatile DualSlotSequenceFile dualSlotFile = null;
+
+	public LocalSequenceFile(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean isAlwaysOpen() {
+		return alwaysOpen;
+	}
+
+	public void setAlwaysOpen(boolean alwaysOpen) {
+		this.alwaysOpen = alwaysOpen;
+	}
+
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public int getForceInterval() {
+		return forceInterval;
+	}
+
+	public void setForceInterval(int forceInterval) {
+		if (forceInterval >= 0) {
+			this.forceInterval = forceInterval;
+		}
+	}
+
+	public boolean isCrashSafe() {
+		return crashSafe;
+	}
+
+	public void setCrashSafe(boolean crashSafe) {
+		this.crashSafe = crashSafe;
+	}
+
+	public boolean isProcessShared() {
+		return processShared;
+	}
+
+	public void setProcessShared(boolean processShared) {
+		this.processShared = processShared;
+	}
+
+	/**
+	 * 申请序列块
+	 *
+	 * @param size
+	 *            块大小
+	 * @return 序列块最大值, 块为(max - size, max]
+	 * @throws IOException
+	 *             序列文件读写失败
+	 */
+	public long reserve(int size) throws IOException {
+		if (!processShared) {
+			if (crashSafe) {
+				// 双槽位文件自己加锁, 并发申请可以共用一次刷盘
+				return dualSlotFile().reserve(size);
+			}
+			synchronized (this) {
+				return reserveLocal(size);
+			}
+		}
+		// 同一jvm内多个实例共享文件时先在jvm内互斥, 再加文件锁与其他进程互斥
+		Object jvmLock = FILE_LOCKS.get(file.getPath());
+		if (jvmLock == null) {
+			Object created = new Object();
+			jvmLock = FILE_LOCKS.putIfAbsent(file.getPath(), created);
+			if (jvmLock == null) {
+				jvmLock = created;
+			}
+		}
+		synchronized (jvmLock) {
+			if (crashSafe) {
+				return dualSlotFile().reserve(size);
+			}
+			synchronized (this) {
+				return reserveLocal(size);
+			}
+		}
+	}
+
+	private synchronized DualSlotSequenceFile dualSlotFile() throws IOException {
+		if (dualSlotFile == null) {
+			dualSlotFile = new DualSlotSequenceFile(file, true, processShared);
+		}
+		return dualSlotFile;
+	}
+
+	private long reserveLocal(int size) throws IOException {
+		if (memoryMapped) {
+			return reserveMapped(size);
+		}
+		FileLock fileLock = null;
+		try {
+			if (accessFile == null) {
+				// 读写方式打开文件
+				accessFile = new RandomAccessFile(file, "rw");
+			}
+			fileLock = lockFile(accessFile.getChannel());
+			long nextBlock = size;
+			// 读出当前文件sequence值,在此基础上增加指定的块大小
+			accessFile.seek(0);
+			long length = accessFile.length();
+			if (length == 8) {
+				nextBlock += accessFile.readLong();
+				accessFile.seek(0);
+			} else if (length > 8) {
+				throw dualSlotFormat();
+			} else if (length > 0) {
+				throw new IOException("序列文件长度不足8字节: " + file);
+			}
+			// 把新的sequence写入文件
+			accessFile.writeLong(nextBlock);
+			if (forceInterval > 0 && ++unforcedBlocks >= forceInterval) {
+				accessFile.getChannel().force(false);
+				unforcedBlocks = 0;
+			}
+			return nextBlock;
+		} finally {
+			releaseFile(fileLock);
+			if (!alwaysOpen && accessFile != null) {
+				closeAccessFile();
+			}
+		}
+	}
+
+	/**
+	 * 内存映射方式申请序列块, 只是一次8字节内存写入
+	 */
+	private long reserveMapped(int size) throws IOException {
+		if (mappedBuffer == null) {
+			FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+			if (channel.size() > 8) {
+				channel.close();
+				throw dualSlotFormat();
+			}
+			// 文件不足8字节时映射会自动扩展文件, 新文件内容为0
+			mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+			mappedChannel = channel;
+		}
+		FileLock fileLock = lockFile(mappedChannel);
+		try {
+			long nextBlock = mappedBuffer.getLong(0) + size;
+			mappedBuffer.putLong(0, nextBlock);
+			if (forceInterval > 0 && ++unforcedBlocks >= forceInterval) {
+				mappedBuffer.force();
+				unforcedBlocks = 0;
+			}
+			return nextBlock;
+		} finally {
+			releaseFile(fileLock);
+		}
+	}
+
+	/**
+	 * 单值格式的文件只有8字节, 更长的文件是双槽位格式; 按单值读取会读到过期的槽位0, 发出重复的序列
+	 */
+	private IOException dualSlotFormat() {
+		return new IOException("序列文件是双槽位格式, 必须开启crashSafe: " + file);
+	}
+
+	/**
+	 * 多进程共享模式下加文件锁
+	 *
+	 * @param channel
+	 * @return 非共享模式返回null
+	 * @throws IOException
+	 */
+	private FileLock lockFile(FileChannel channel) throws IOException {
+		return processShared ? channel.lock(0, LOCK_REGION, false) : null;
+	}
+
+	private void releaseFile(FileLock fileLock) {
+		if (fileLock != null && fileLock.isValid()) {
+			try {
+				fileLock.release();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void closeAccessFile() {
+		try {
+			accessFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		accessFile = null;
+	}
+
+	/**
+	 * 关闭文件, 内存映射模式关闭前把未刷盘的块写入磁盘
+	 */
+	@Override
+	public synchronized void close() {
+		if (dualSlotFile != null) {
+			try {
+				dualSlotFile.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			dualSlotFile = null;
+		}
+		if (mappedBuffer != null) {
+			if (unforcedBlocks > 0) {
+				mappedBuffer.force();
+				unforcedBlocks = 0;
+			}
+			mappedBuffer = null;
+		}
+		if (mappedChannel != null) {
+			try {
+				mappedChannel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			mappedChannel = null;
+		}
+		if (accessFile != null) {
+			closeAccessFile();
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package cn.com.zach.tools.increment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+/**
+ * 多序列本地文件: 一个内存映射文件中按固定宽度槽位保存多个命名序列.
+ * 文件格式: 头部(魔数, 版本, 槽位容量, 已用槽位数) + 名称索引区(每个槽位64字节) + 序列值区(每个槽位8字节).
+ * 每个序列单独加锁申请序列块, 不同序列之间互不影响.
+ *
+ * @author zach
+ */
+public class LocalSequenceRegistry implements SequenceStore, InitializingBean, DisposableBean {
+
+	/**
+	 * 默认sequence存储文件在classpath目录下
+	 */
+	private static final String DEFAULT_LOCAL_FILE = "classpath:/";
+
+	/**
+	 * 文件魔数
+	 */
+	private static final int MAGIC = 0x53455152;
+
+	/**
+	 * 文件格式版本
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * 头部长度: 魔数, 版本, 槽位容量, 已用槽位数
+	 */
+	private static final int HEADER_LENGTH = 16;
+
+	/**
+	 * 名称索引每项长度: 2字节名称长度 + 62字节utf-8名称
+	 */
+	private static final int NAME_LENGTH = 64;
+
+	/**
+	 * 名称最大字节数
+	 */
+	private static final int MAX_NAME_BYTES = NAME_LENGTH - 2;
+
+	/**
+	 * 自增sequence值保存的本地文件
+	 */
+	private String localFile = null;
+
+	/**
+	 * 新建文件时的槽位容量, 已存在的文件以文件头为准
+	 */
+	private int capacity = 256;
+
+	/**
+	 * 命名序列每次申请块大小
+	 */
+	private int blockSize = 1000;
+
+	/**
+	 * 刷盘策略: 1:每个块都刷盘, N:每N个块刷盘一次, 0:从不主动刷盘
+	 */
+	private int forceInterval = 1;
+
+	/**
+	 * 未刷盘的块数
+	 */
+	private final AtomicInteger unforcedBlocks = new AtomicInteger(0);
+
+	/**
+	 * 映射文件通道
+	 */
+	private FileChannel channel = null;
+
+	/**
+	 * 文件映射内存
+	 */
+	private volatile MappedByteBuffer buffer = null;
+
+	/**
+	 * 名称到槽位的索引
+	 */
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+	/**
+	 * 已创建的命名序列生成器
+	 */
+	private final ConcurrentMap<String, DataFieldMaxValueIncrementer> incrementers = new ConcurrentHashMap<String, DataFieldMaxValueIncrementer>();
+
+	public String getLocalFile() {
+		return localFile;
+	}
+
+	public void setLocalFile(String localFile) {
+		this.localFile = localFile;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		if (capacity > 0) {
+			this.capacity = capacity;
+		}
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public void setBlockSize(int blockSize) {
+		if (blockSize > 0) {
+			this.blockSize = blockSize;
+		}
+	}
+
+	public int getForceInterval() {
+		return forceInterval;
+	}
+
+	public void setForceInterval(int forceInterval) {
+		if (forceInterval >= 0) {
+			this.forceInterval = forceInterval;
+		}
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		// 查找sequence文件位置,找不到使用默认文件路径
+		ResourceLoader loader = new DefaultResourceLoader();
+		if (localFile == null || localFile.length() == 0) {
+			localFile = DEFAULT_LOCAL_FILE;
+		}
+		Resource resource = loader.getResource(localFile);
+		if (!resource.exists()) {
+			resource = loader.getResource(DEFAULT_LOCAL_FILE);
+		}
+		File file = resource.getFile();
+		// 如果是目录,在目录下新建文件
+		if (file.isDirectory()) {
+			file = new File(file, "incrementer.registry.dat");
+		}
+		this.localFile = file.getPath();
+		open(file);
+	}
+
+	/**
+	 * 打开并映射文件, 新文件写入文件头, 已有文件加载名称索引
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	private void open(File file) throws IOException {
+		RandomAccessFile accessFile = new RandomAccessFile(file, "rw");
+		boolean created = accessFile.length() == 0;
+		if (!created) {
+			accessFile.seek(0);
+			if (accessFile.readInt() != MAGIC) {
+				accessFile.close();
+				throw new IOException("不是多序列文件: " + file);
+			}
+			accessFile.readInt();
+			this.capacity = accessFile.readInt();
+		}
+		this.channel = accessFile.getChannel();
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileLength(capacity));
+		if (created) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, capacity);
+			buffer.putInt(12, 0);
+			buffer.force();
+			return;
+		}
+		int used = buffer.getInt(12);
+		byte[] bytes = new byte[MAX_NAME_BYTES];
+		for (int i = 0; i < used; i++) {
+			int offset = nameOffset(i);
+			int length = buffer.getShort(offset);
+			for (int j = 0; j < length; j++) {
+				bytes[j] = buffer.get(offset + 2 + j);
+			}
+			String name = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			slots.put(name, new Slot(valueOffset(i)));
+		}
+	}
+
+	private static long fileLength(int capacity) {
+		return HEADER_LENGTH + (long) capacity * (NAME_LENGTH + 8);
+	}
+
+	private static int nameOffset(int index) {
+		return HEADER_LENGTH + index * NAME_LENGTH;
+	}
+
+	private int valueOffset(int index) {
+		return HEADER_LENGTH + capacity * NAME_LENGTH + index * 8;
+	}
+
+	/**
+	 * 为指定序列申请序列块
+	 *
+	 * @param name
+	 *            序列名称
+	 * @param size
+	 *            块大小
+	 * @return 申请到的区间
+	 */
+	@Override
+	public LongRange reserve(String name, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("块大小必须大于0: " + size);
+		}
+		return slot(name).reserve(size);
+	}
+
+	/**
+	 * 获取序列当前已分配的最大值
+	 *
+	 * @param name
+	 * @return
+	 */
+	public long currentValue(String name) {
+		Slot slot = slots.get(name);
+		return slot == null ? 0 : slot.current();
+	}
+
+	/**
+	 * 已注册的序列名称
+	 *
+	 * @return
+	 */
+	public Set<String> getSequenceNames() {
+		return Collections.unmodifiableSet(slots.keySet());
+	}
+
+	/**
+	 * 获取命名序列生成器, 同名返回同一实例
+	 *
+	 * @param name
+	 *            序列名称
+	 * @return
+	 */
+	public DataFieldMaxValueIncrementer getIncrementer(final String name) {
+		DataFieldMaxValueIncrementer incrementer = incrementers.get(name);
+		if (incrementer == null) {
+			slot(name);
+			incrementer = new NamedSequenceIncrementer(name);
+			DataFieldMaxValueIncrementer exists = incrementers.putIfAbsent(name, incrementer);
+			if (exists != null) {
+				incrementer = exists;
+			}
+		}
+		return incrementer;
+	}
+
+	/**
+	 * 查找槽位, 不存在时分配新槽位
+	 *
+	 * @param name
+	 * @return
+	 */
+	private Slot slot(String name) {
+		Slot slot = slots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		return register(name);
+	}
+
+	/**
+	 * 注册新序列, 只有新建序列时才需要全局锁
+	 *
+	 * @param name
+	 * @return
+	 */
+	private synchronized Slot register(String name) {
+		if (buffer == null) {
+			throw new IllegalStateException("多序列文件未打开");
+		}
+		Slot slot = slots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length == 0 || bytes.length > MAX_NAME_BYTES) {
+			throw new IllegalArgumentException("序列名称长度必须在1到" + MAX_NAME_BYTES + "字节之间: " + name);
+		}
+		int used = buffer.getInt(12);
+		if (used >= capacity) {
+			throw new IllegalStateException("多序列文件槽位已满: " + capacity);
+		}
+		int offset = nameOffset(used);
+		buffer.putShort(offset, (short) bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(offset + 2 + i, bytes[i]);
+		}
+		buffer.putLong(valueOffset(used), 0);
+		buffer.putInt(12, used + 1);
+		buffer.force();
+		slot = new Slot(valueOffset(used));
+		slots.put(name, slot);
+		return slot;
+	}
+
+	/**
+	 * 按刷盘策略刷盘
+	 */
+	private void afterReserve() {
+		if (forceInterval > 0 && unforcedBlocks.incrementAndGet() >= forceInterval) {
+			unforcedBlocks.set(0);
+			buffer.force();
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+				channel = null;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * 序列槽位, 每个槽位独立加锁
+	 */
+	private class Slot {
+
+		/**
+		 * 序列值在文件中的偏移
+		 */
+		private final int offset;
+
+		Slot(int offset) {
+			this.offset = offset;
+		}
+
+		synchronized LongRange reserve(int size) {
+			long max = buffer.getLong(offset) + size;
+			buffer.putLong(offset, max);
+			afterReserve();
+			return new LongRange(max - size + 1, size);
+		}
+
+		long current() {
+			return buffer.getLong(offset);
+		}
+	}
+
+	/**
+	 * 多序列文件中的命名序列生成器, 段内取号不加锁
+	 */
+	private class NamedSequenceIncrementer implements DataFieldMaxValueIncrementer {
+
+		private final SegmentBuffer segmentBuffer;
+
+		NamedSequenceIncrementer(final String name) {
+			this.segmentBuffer = new SegmentBuffer(new SegmentBuffer.SegmentLoader() {
+				@Override
+				public Segment load(int size) {
+					LongRange range = reserve(name, size);
+					return new Segment(range.getFirst(), range.getLast());
+				}
+			}, blockSize);
+		}
+
+		@Override
+		public long nextLongValue() throws DataAccessException {
+			return segmentBuffer.nextId();
+		}
+
+		@Override
+		public int nextIntValue() throws DataAccessException {
+			return (int) nextLongValue();
+		}
+
+		@Override
+		public String nextStringValue() throws DataAccessException {
+			return Long.toString(nextLongValue());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package cn.com.zach.tools.increment;
+
+/**
+ * 批量取号返回的连续id区间[first, first + size - 1]
+ *
+ * @author zach
+ */
+public final class LongRange {
+
+	/**
+	 * 区间第一个值
+	 */
+	private final long first;
+
+	/**
+	 * 区间包含的id个数
+	 */
+	private final int size;
+
+	public LongRange(long first, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("区间大小必须大于0: " + size);
+		}
+		this.first = first;
+		this.size = size;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return first + size - 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 区间中第index个值
+	 *
+	 * @param index
+	 * @return
+	 */
+	public long get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		return first + index;
+	}
+
+	public boolean contains(long id) {
+		return id >= first && id <= getLast();
+	}
+
+	/**
+	 * 把区间中的值依次写入数组
+	 *
+	 * @param ids
+	 *            目标数组
+	 * @param offset
+	 *            数组起始位置
+	 */
+	public void fill(long[] ids, int offset) {
+		if (offset < 0 || offset + size > ids.length) {
+			throw new IndexOutOfBoundsException("数组长度不足: offset=" + offset + ", size=" + size + ", length=" + ids.length);
+		}
+		for (int i = 0; i < size; i++) {
+			ids[offset + i] = first + i;
+		}
+	}
+
+	public long[] toArray() {
+		long[] ids = new long[size];
+		fill(ids, 0);
+		return ids;
+	}
+
+	@Override
+	public String toString() {
+		return "LongRange[" + first + ", " + getLast() + "]";
+	}
+}
@@ -1,17 +1,16 @@
 
 package cn.com.zach.tools.increment;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.DataAccessException;
-import org.springframework.dao.DataAccessResourceFailureException;
-import org.springframework.jdbc.datasource.DataSourceUtils;
-import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.incrementer.AbstractColumnMaxValueIncrementer;
 
 /**
@@ -77,7 +76,8 @@ import org.springframework.jdbc.support.incrementer.AbstractColumnMaxValueIncrem
  * @author zach
  *
  */
-public class MySQLSequenceMaxValueIncrementer extends AbstractColumnMaxValueIncrementer {
+public class MySQLSequenceMaxValueIncrementer extends AbstractColumnMaxValueIncrementer
+		implements SequenceWarmUp, DisposableBean {
 
 	/** 下一个值 */
 	private long nextId = 0;
@@ -85,6 +85,33 @@ public class MySQLSequenceMaxValueIncrementer extends AbstractColumnMaxValueIncr
 	/** 最大值 */
 	private long maxId = 0;
 
+	/** 是否开启双缓冲号段, 开启后当前号段快用完时后台预取下一个号段 */
+	private boolean doubleBuffer = false;
+
+	/** 预取阈值, 当前号段剩余比例低于该值时后台预取 */
+	private double prefetchThreshold = SegmentBuffer.DEFAULT_PREFETCH_THRESHOLD;
+
+	/** 自适应块大小, 为空时固定使用cacheSize */
+	private AdaptiveBlockSize adaptiveBlockSize;
+
+	/** 多序列批量申请, 设置后序列块通过批量语句申请 */
+	private BatchSequenceFetcher batchFetcher;
+
+	/** 异步取号时访问数据库的执行器, 为空时使用号段共享的补充线程池 */
+	private Executor refillExecutor;
+
+	/** 统计监听, 序列名称为incrementerName */
+	private SequenceListener sequenceListener;
+
+	/** 未开启doubleBuffer时取号使用的锁 */
+	private final Lock lock = new ReentrantLock();
+
+	/** 数据库序列存储 */
+	private volatile JdbcSequenceStore sequenceStore;
+
+	/** 双缓冲号段 */
+	private volatile SegmentBuffer segmentBuffer;
+
 	/**
 	 * 默认构造函数
 	 */
@@ -114,31 +141,324 @@ public class MySQLSequenceMaxValueIncrementer extends AbstractColumnMaxValueIncr
 		super.setIncrementerName(incrementerName);
 	}
 
+	public boolean isDoubleBuffer() {
+		return doubleBuffer;
+	}
+
+	public void setDoubleBuffer(boolean doubleBuffer) {
+		this.doubleBuffer = doubleBuffer;
+	}
+
+	public double getPrefetchThreshold() {
+		return prefetchThreshold;
+	}
+
+	public void setPrefetchThreshold(double prefetchThreshold) {
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	public AdaptiveBlockSize getAdaptiveBlockSize() {
+		return adaptiveBlockSize;
+	}
+
+	/**
+	 * 设置自适应块大小, 每个incrementer使用独立实例
+	 * 
+	 * @param adaptiveBlockSize
+	 */
+	public void setAdaptiveBlockSize(AdaptiveBlockSize adaptiveBlockSize) {
+		this.adaptiveBlockSize = adaptiveBlockSize;
+	}
+
+	public BatchSequenceFetcher getBatchFetcher() {
+		return batchFetcher;
+	}
+
+	public void setBatchFetcher(BatchSequenceFetcher batchFetcher) {
+		this.batchFetcher = batchFetcher;
+	}
+
+	public Executor getRefillExecutor() {
+		return refillExecutor;
+	}
+
+	/**
+	 * 设置异步取号执行器, 事件循环线程调用异步接口时数据库访问都在该执行器中完成
+	 * 
+	 * @param refillExecutor
+	 */
+	public void setRefillExecutor(Executor refillExecutor) {
+		this.refillExecutor = refillExecutor;
+	}
+
+	public SequenceListener getSequenceListener() {
+		return sequenceListener;
+	}
+
+	public void setSequenceListener(SequenceListener sequenceListener) {
+		this.sequenceListener = sequenceListener;
+	}
+
 	@Override
-	protected synchronized long getNextKey() throws DataAccessException {
-		if (this.maxId == this.nextId) {
-			Connection con = DataSourceUtils.getConnection(getDataSource());
-			Statement stmt = null;
-			try {
-				stmt = con.createStatement();
-				DataSourceUtils.applyTransactionTimeout(stmt, getDataSource());
-				ResultSet rs = stmt.executeQuery(
-						"SELECT nextblock( '" + getColumnName() + "'," + getCacheSize() + " ) AS nextkey");
-				try {
-					this.maxId = rs.getLong(1);
-				} finally {
-					JdbcUtils.closeResultSet(rs);
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		if (doubleBuffer) {
+			SegmentBuffer buffer = new SegmentBuffer(new SegmentBuffer.SegmentLoader() {
+				@Override
+				public Segment load(int size) {
+					long max = fetchNextBlock(size);
+					return new Segment(max - size + 1, max);
 				}
-				this.nextId = this.maxId - getCacheSize() + 1;
-			} catch (SQLException ex) {
-				throw new DataAccessResourceFailureException("自增列获取失败", ex);
-			} finally {
-				JdbcUtils.closeStatement(stmt);
-				DataSourceUtils.releaseConnection(con, getDataSource());
+			}, getCacheSize());
+			buffer.setPrefetchThreshold(prefetchThreshold);
+			buffer.setAdaptiveBlockSize(adaptiveBlockSize);
+			buffer.setRefillExecutor(refillExecutor);
+			buffer.setListener(sequenceListener, getIncrementerName());
+			this.segmentBuffer = buffer;
+		}
+	}
+
+	@Override
+	protected long getNextKey() throws DataAccessException {
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			return buffer.nextId();
+		}
+		lock();
+		try {
+			if (this.maxId == this.nextId) {
+				int size = adaptiveBlockSize == null ? getCacheSize() : adaptiveBlockSize.next(getCacheSize());
+				this.maxId = fetchNextBlock(size);
+				this.nextId = this.maxId - size + 1;
+			} else {
+				this.nextId++;
+			}
+			return this.nextId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 预热: 申请第一个序列块, 同时建立数据库连接
+	 */
+	@Override
+	public void warmUp() throws DataAccessException {
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			buffer.warmUp();
+			return;
+		}
+		lock();
+		try {
+			if (this.maxId == this.nextId) {
+				int size = adaptiveBlockSize == null ? getCacheSize() : adaptiveBlockSize.next(getCacheSize());
+				this.maxId = fetchNextBlock(size);
+				// 下一次取号从块的第一个值开始
+				this.nextId = this.maxId - size;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 批量获取连续count个值, 只加一次锁; 缓存的序列块剩余不够时丢弃剩余部分重新申请块,
+	 * 只有count大于块大小时才直接从数据库申请count大小的块
+	 * 
+	 * @param count
+	 * @return
+	 */
+	public LongRange nextLongValues(int count) throws DataAccessException {
+		if (count < 1) {
+			throw new IllegalArgumentException("批量取号个数必须大于0: " + count);
+		}
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			return buffer.nextRange(count);
+		}
+		lock();
+		try {
+			if (this.maxId - this.nextId < count && count <= getCacheSize()) {
+				int size = adaptiveBlockSize == null ? getCacheSize() : adaptiveBlockSize.next(getCacheSize());
+				size = Math.max(size, count);
+				this.maxId = fetchNextBlock(size);
+				this.nextId = this.maxId - size;
+			}
+			if (this.maxId - this.nextId >= count) {
+				LongRange range = new LongRange(this.nextId + 1, count);
+				this.nextId += count;
+				return range;
+			}
+		} finally {
+			lock.unlock();
+		}
+		long max = fetchNextBlock(count);
+		return new LongRange(max - count + 1, count);
+	}
+
+	/**
+	 * 批量取号填满ids数组
+	 * 
+	 * @param ids
+	 */
+	public void nextLongValues(long[] ids) throws DataAccessException {
+		if (ids.length > 0) {
+			nextLongValues(ids.length).fill(ids, 0);
+		}
+	}
+
+	/**
+	 * 异步获取下一个值: 缓存的号段有余量时直接返回已完成的future;
+	 * 需要访问数据库时在补充执行器中完成, 调用线程不会阻塞
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<Long> nextLongValueAsync() {
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			return buffer.nextIdAsync();
+		}
+		LongRange cached = tryCachedRange(1);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached.getFirst());
+		}
+		return SegmentBuffer.supplyAsync(new Supplier<Long>() {
+			@Override
+			public Long get() {
+				return nextLongValue();
+			}
+		}, executor());
+	}
+
+	/**
+	 * 异步批量获取连续count个值, 规则同{@link #nextLongValueAsync()}
+	 * 
+	 * @param count
+	 * @return
+	 */
+	public CompletableFuture<LongRange> nextLongValuesAsync(final int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("批量取号个数必须大于0: " + count);
+		}
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			return buffer.nextRangeAsync(count);
+		}
+		LongRange cached = tryCachedRange(count);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		return SegmentBuffer.supplyAsync(new Supplier<LongRange>() {
+			@Override
+			public LongRange get() {
+				return nextLongValues(count);
+			}
+		}, executor());
+	}
+
+	/**
+	 * 未开启doubleBuffer时在缓存的序列块内取号, 不等待锁: 持有锁的线程可能正在访问数据库
+	 * 
+	 * @param count
+	 * @return 锁被占用或缓存剩余不足时返回null
+	 */
+	private LongRange tryCachedRange(int count) {
+		if (!lock.tryLock()) {
+			return null;
+		}
+		try {
+			if (this.maxId - this.nextId < count) {
+				return null;
 			}
-		} else {
-			this.nextId++;
+			LongRange range = new LongRange(this.nextId + 1, count);
+			this.nextId += count;
+			return range;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Executor executor() {
+		return refillExecutor == null ? SegmentBuffer.DEFAULT_REFILL_EXECUTOR : refillExecutor;
+	}
+
+	/**
+	 * 从数据库申请下一个序列块
+	 * 
+	 * @param blockSize
+	 *            块大小
+	 * @return 序列块最大值
+	 */
+	protected long fetchNextBlock(int blockSize) throws DataAccessException {
+		SequenceListener listener = this.sequenceListener;
+		if (listener == null) {
+			return sequenceStore().reserve(getColumnName(), blockSize).getLast();
+		}
+		long start = System.nanoTime();
+		long max = sequenceStore().reserve(getColumnName(), blockSize).getLast();
+		listener.onRefill(getIncrementerName(), blockSize, System.nanoTime() - start);
+		return max;
+	}
+
+	/**
+	 * 加锁, 发生竞争时把等待时间通知监听
+	 */
+	private void lock() {
+		if (lock.tryLock()) {
+			return;
+		}
+		SequenceListener listener = this.sequenceListener;
+		if (listener == null) {
+			lock.lock();
+			return;
+		}
+		long start = System.nanoTime();
+		lock.lock();
+		listener.onLockWait(getIncrementerName(), System.nanoTime() - start);
+	}
+
+	/**
+	 * 缓存中剩余未使用的号码个数, 包括预取的号段
+	 * 
+	 * @return
+	 */
+	public long remaining() {
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			return buffer.remaining() + buffer.prefetched();
+		}
+		lock.lock();
+		try {
+			return this.maxId - this.nextId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 关闭时把丢弃的号码个数通知监听
+	 */
+	@Override
+	public void destroy() {
+		SequenceListener listener = this.sequenceListener;
+		if (listener != null) {
+			listener.onDestroy(getIncrementerName(), remaining());
+		}
+	}
+
+	/**
+	 * 数据库序列存储, 第一次使用时创建
+	 * 
+	 * @return
+	 */
+	private JdbcSequenceStore sequenceStore() {
+		JdbcSequenceStore store = this.sequenceStore;
+		if (store == null) {
+			store = new JdbcSequenceStore(getDataSource());
+			store.setBatchFetcher(batchFetcher);
+			this.sequenceStore = store;
 		}
-		return this.nextId;
+		return store;
 	}
 }
@@ -3,6 +3,7 @@ package cn.com.zach.tools.increment;
 
 import javax.sql.DataSource;
 
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.support.incrementer.AbstractSequenceMaxValueIncrementer;
 
 /**
@@ -72,6 +73,11 @@ import org.springframework.jdbc.support.incrementer.AbstractSequenceMaxValueIncr
  */
 public class MysqlSequenceIncrementer extends AbstractSequenceMaxValueIncrementer {
 
+	/**
+	 * 多序列批量申请, 设置后nextval通过批量语句执行
+	 */
+	private BatchSequenceFetcher batchFetcher;
+
 	public MysqlSequenceIncrementer() {
 	}
 
@@ -85,6 +91,22 @@ public class MysqlSequenceIncrementer extends AbstractSequenceMaxValueIncremente
 		super(dataSource, incrementerName);
 	}
 
+	public BatchSequenceFetcher getBatchFetcher() {
+		return batchFetcher;
+	}
+
+	public void setBatchFetcher(BatchSequenceFetcher batchFetcher) {
+		this.batchFetcher = batchFetcher;
+	}
+
+	@Override
+	protected long getNextKey() throws DataAccessException {
+		if (batchFetcher != null) {
+			return batchFetcher.nextValue(getIncrementerName());
+		}
+		return super.getNextKey();
+	}
+
 	@Override
 	protected String getSequenceQuery() {
 		// 这里的getIncrementerName是sequence表中name
@@ -0,0 +1,252 @@
+package cn.com.zach.tools.increment;
+
+import java.io.File;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+/**
+ * 节点标识来源, 用于生成主键中的节点部分. 第一次使用时才解析, 解析结果缓存, 不做反向DNS查询.
+ * 可选来源: 网卡地址, 环境变量, 文件, 随机数, 以及按顺序尝试的组合.
+ *
+ * @author zach
+ */
+public abstract class NodeIdentity {
+
+	/**
+	 * 是否已解析
+	 */
+	private volatile boolean resolved = false;
+
+	/**
+	 * 解析后的节点标识
+	 */
+	private int nodeId;
+
+	/**
+	 * 获取节点标识, 第一次调用时解析
+	 *
+	 * @return
+	 */
+	public final int getNodeId() {
+		if (!resolved) {
+			synchronized (this) {
+				if (!resolved) {
+					try {
+						nodeId = resolve();
+					} catch (Exception e) {
+						throw new IllegalStateException("节点标识解析失败: " + this, e);
+					}
+					resolved = true;
+				}
+			}
+		}
+		return nodeId;
+	}
+
+	/**
+	 * 解析节点标识
+	 *
+	 * @return
+	 * @throws Exception
+	 *             无法解析
+	 */
+	protected abstract int resolve() throws Exception;
+
+	/**
+	 * 默认来源: 网卡地址, 取不到时使用随机数
+	 *
+	 * @return
+	 */
+	public static NodeIdentity defaultIdentity() {
+		return firstOf(networkInterface(), random());
+	}
+
+	/**
+	 * 枚举本机网卡, 取第一个非回环网卡的IPv4地址, 没有IPv4地址时取MAC地址低32位
+	 *
+	 * @return
+	 */
+	public static NodeIdentity networkInterface() {
+		return new NodeIdentity() {
+			@Override
+			protected int resolve() throws Exception {
+				Integer mac = null;
+				Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+				while (interfaces != null && interfaces.hasMoreElements()) {
+					NetworkInterface ni = interfaces.nextElement();
+					if (ni.isLoopback() || ni.isVirtual() || !ni.isUp()) {
+						continue;
+					}
+					Enumeration<InetAddress> addresses = ni.getInetAddresses();
+					while (addresses.hasMoreElements()) {
+						InetAddress address = addresses.nextElement();
+						if (address instanceof Inet4Address && !address.isLinkLocalAddress()) {
+							return UUIDMaxValueIncrementer.IptoInt(address.getAddress());
+						}
+					}
+					byte[] hardware = ni.getHardwareAddress();
+					if (mac == null && hardware != null && hardware.length >= 4) {
+						mac = toInt(hardware, hardware.length - 4);
+					}
+				}
+				if (mac != null) {
+					return mac;
+				}
+				throw new IllegalStateException("没有可用的网卡地址");
+			}
+
+			@Override
+			public String toString() {
+				return "networkInterface";
+			}
+		};
+	}
+
+	/**
+	 * 从环境变量读取, 值为整数或IPv4地址
+	 *
+	 * @param variable
+	 *            环境变量名
+	 * @return
+	 */
+	public static NodeIdentity environment(final String variable) {
+		return new NodeIdentity() {
+			@Override
+			protected int resolve() throws Exception {
+				String value = System.getenv(variable);
+				if (value == null || value.trim().length() == 0) {
+					throw new IllegalStateException("环境变量未设置: " + variable);
+				}
+				return parse(value);
+			}
+
+			@Override
+			public String toString() {
+				return "environment:" + variable;
+			}
+		};
+	}
+
+	/**
+	 * 从文件第一行读取, 值为整数或IPv4地址
+	 *
+	 * @param path
+	 *            文件路径
+	 * @return
+	 */
+	public static NodeIdentity file(final String path) {
+		return new NodeIdentity() {
+			@Override
+			protected int resolve() throws Exception {
+				String content = new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8);
+				int end = content.indexOf('\n');
+				return parse(end < 0 ? content : content.substring(0, end));
+			}
+
+			@Override
+			public String toString() {
+				return "file:" + path;
+			}
+		};
+	}
+
+	/**
+	 * 随机数, 每个实例解析一次
+	 *
+	 * @return
+	 */
+	public static NodeIdentity random() {
+		return new NodeIdentity() {
+			@Override
+			protected int resolve() {
+				return new SecureRandom().nextInt();
+			}
+
+			@Override
+			public String toString() {
+				return "random";
+			}
+		};
+	}
+
+	/**
+	 * 固定值
+	 *
+	 * @param nodeId
+	 * @return
+	 */
+	public static NodeIdentity fixed(final int nodeId) {
+		return new NodeIdentity() {
+			@Override
+			protected int resolve() {
+				return nodeId;
+			}
+
+			@Override
+			public String toString() {
+				return "fixed:" + nodeId;
+			}
+		};
+	}
+
+	/**
+	 * 按顺序尝试多个来源, 返回第一个解析成功的结果
+	 *
+	 * @param sources
+	 * @return
+	 */
+	public static NodeIdentity firstOf(final NodeIdentity... sources) {
+		return new NodeIdentity() {
+			@Override
+			protected int resolve() {
+				IllegalStateException failure = new IllegalStateException("所有节点标识来源都解析失败");
+				for (NodeIdentity source : sources) {
+					try {
+						return source.getNodeId();
+					} catch (IllegalStateException e) {
+						failure.addSuppressed(e);
+					}
+				}
+				throw failure;
+			}
+
+			@Override
+			public String toString() {
+				return "firstOf" + Arrays.toString(sources);
+			}
+		};
+	}
+
+	/**
+	 * 解析整数或IPv4地址
+	 *
+	 * @param value
+	 * @return
+	 */
+	static int parse(String value) {
+		String text = value.trim();
+		if (text.indexOf('.') < 0) {
+			return (int) Long.parseLong(text);
+		}
+		String[] parts = text.split("\\.");
+		if (parts.length != 4) {
+			throw new IllegalArgumentException("不是IPv4地址: " + text);
+		}
+		byte[] bytes = new byte[4];
+		for (int i = 0; i < 4; i++) {
+			bytes[i] = (byte) Integer.parseInt(parts[i]);
+		}
+		return UUIDMaxValueIncrementer.IptoInt(bytes);
+	}
+
+	private static int toInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8)
+				| (bytes[offset + 3] & 0xff);
+	}
+}
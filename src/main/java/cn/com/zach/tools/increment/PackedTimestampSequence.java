@@ -0,0 +1,178 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+/**
+ * 时间戳 + 毫秒内序列的打包状态, {@link SnowflakeMaxValueIncrementer}和{@link ShardedMaxValueIncrementer}共用.
+ * 每个槽位一个long: 上次时间戳 << sequenceBits | 序列, 取号只做cas; 同一毫秒序列用完时等待下一毫秒, 时钟回拨时在允许范围内等待.
+ * 不同槽位的状态分散在不同缓存行.
+ *
+ * @author zach
+ */
+final class PackedTimestampSequence {
+
+	/**
+	 * 每个槽位占用的long个数, 8个long为64字节, 避免伪共享
+	 */
+	private static final int STATE_STRIDE = 8;
+
+	/**
+	 * 毫秒内序列位数
+	 */
+	private final int sequenceBits;
+
+	/**
+	 * 毫秒内序列掩码
+	 */
+	private final long sequenceMask;
+
+	/**
+	 * 时间戳位数
+	 */
+	private final int timestampBits;
+
+	/**
+	 * 时间戳最大值
+	 */
+	private final long maxTimestamp;
+
+	/**
+	 * 允许等待的最大时钟回拨毫秒数
+	 */
+	private final long maxBackwardMillis;
+
+	/**
+	 * 当前时间戳(相对起始时间)
+	 */
+	private final LongSupplier clock;
+
+	/**
+	 * 各槽位的打包状态
+	 */
+	private final AtomicLongArray states;
+
+	/**
+	 * @param slots
+	 *            槽位个数
+	 * @param sequenceBits
+	 *            毫秒内序列位数
+	 * @param timestampBits
+	 *            时间戳位数
+	 * @param maxBackwardMillis
+	 *            允许等待的最大时钟回拨毫秒数
+	 * @param clock
+	 *            当前时间戳
+	 */
+	PackedTimestampSequence(int slots, int sequenceBits, int timestampBits, long maxBackwardMillis, LongSupplier clock) {
+		this.sequenceBits = sequenceBits;
+		this.sequenceMask = ~(-1L << sequenceBits);
+		this.timestampBits = timestampBits;
+		this.maxTimestamp = ~(-1L << timestampBits);
+		this.maxBackwardMillis = maxBackwardMillis;
+		this.clock = clock;
+		this.states = new AtomicLongArray(slots * STATE_STRIDE);
+	}
+
+	/**
+	 * 在指定槽位上取下一个打包值
+	 *
+	 * @param slot
+	 * @return 时间戳 << sequenceBits | 序列
+	 */
+	long next(int slot) {
+		int index = slot * STATE_STRIDE;
+		for (;;) {
+			long current = states.get(index);
+			long lastTimestamp = current >>> sequenceBits;
+			long timestamp = clock.getAsLong();
+			long next;
+			if (timestamp > lastTimestamp) {
+				if (timestamp > maxTimestamp) {
+					throw new DataAccessResourceFailureException("时间戳超出" + timestampBits + "位表示范围");
+				}
+				next = timestamp << sequenceBits;
+			} else if (timestamp == lastTimestamp) {
+				if ((current & sequenceMask) == sequenceMask) {
+					// 本毫秒序列用完, 等待下一毫秒
+					Thread.yield();
+					continue;
+				}
+				next = current + 1;
+			} else {
+				waitClockBackward(lastTimestamp - timestamp);
+				continue;
+			}
+			if (states.compareAndSet(index, current, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * 打包值中的时间戳
+	 */
+	long timestamp(long packed) {
+		return packed >>> sequenceBits;
+	}
+
+	/**
+	 * 打包值中的毫秒内序列
+	 */
+	long sequence(long packed) {
+		return packed & sequenceMask;
+	}
+
+	/**
+	 * 时钟回拨, 在允许范围内等待时钟追上
+	 *
+	 * @param offset
+	 *            回拨毫秒数
+	 */
+	private void waitClockBackward(long offset) {
+		if (offset > maxBackwardMillis) {
+			throw new DataAccessResourceFailureException("时钟回拨" + offset + "毫秒, 超过允许等待的" + maxBackwardMillis + "毫秒");
+		}
+		LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(offset));
+	}
+
+	/**
+	 * 确定workerId: 设置了租约时从租约取得, 租约的最大workerId必须在workerIdBits表示范围内
+	 *
+	 * @param workerIdBits
+	 * @param workerId
+	 *            未设置租约时使用的workerId
+	 * @param lease
+	 * @return
+	 */
+	static long resolveWorkerId(int workerIdBits, long workerId, WorkerIdLeaseManager lease) {
+		long maxWorkerId = ~(-1L << workerIdBits);
+		if (lease != null) {
+			if (lease.getMaxWorkerId() > maxWorkerId) {
+				throw new IllegalArgumentException("workerId租约的maxWorkerId=" + lease.getMaxWorkerId() + "超出workerIdBits="
+						+ workerIdBits + "的表示范围[0, " + maxWorkerId + "]");
+			}
+			workerId = lease.getWorkerId();
+		}
+		if (workerId < 0 || workerId > maxWorkerId) {
+			throw new IllegalArgumentException("workerId超出范围[0, " + maxWorkerId + "]: " + workerId);
+		}
+		return workerId;
+	}
+
+	/**
+	 * 取号前检查租约, 租约失效后停止取号
+	 *
+	 * @param lease
+	 * @param workerId
+	 */
+	static void checkLease(WorkerIdLeaseManager lease, long workerId) {
+		if (lease != null && !lease.isValid()) {
+			throw new DataAccessResourceFailureException("workerId租约已失效, 停止取号: " + workerId);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 序列号段: 一次从存储中申请到的连续序列区间[minId, maxId], 段内取号只做原子自增, 不加锁
+ *
+ * @author zach
+ */
+public class Segment {
+
+	/**
+	 * 号段已用完标记
+	 */
+	public static final long EXHAUSTED = Long.MIN_VALUE;
+
+	/**
+	 * 号段起始值(包含)
+	 */
+	private final long minId;
+
+	/**
+	 * 号段最大值(包含)
+	 */
+	private final long maxId;
+
+	/**
+	 * 下一个待分配的值
+	 */
+	private final AtomicLong cursor;
+
+	/**
+	 * @param minId
+	 *            号段起始值(包含)
+	 * @param maxId
+	 *            号段最大值(包含)
+	 */
+	public Segment(long minId, long maxId) {
+		if (maxId < minId) {
+			throw new IllegalArgumentException("号段最大值不能小于起始值: [" + minId + ", " + maxId + "]");
+		}
+		this.minId = minId;
+		this.maxId = maxId;
+		this.cursor = new AtomicLong(minId);
+	}
+
+	/**
+	 * 取号段中下一个值
+	 *
+	 * @return 下一个值, 号段用完返回{@link #EXHAUSTED}
+	 */
+	public long next() {
+		long id = cursor.getAndIncrement();
+		return id <= maxId ? id : EXHAUSTED;
+	}
+
+	/**
+	 * 从号段中一次取出连续count个值, 剩余不足时不取
+	 *
+	 * @param count
+	 * @return 第一个值, 剩余不足返回{@link #EXHAUSTED}
+	 */
+	public long take(int count) {
+		for (;;) {
+			long id = cursor.get();
+			if (id + count - 1 > maxId) {
+				return EXHAUSTED;
+			}
+			if (cursor.compareAndSet(id, id + count)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * 号段剩余可分配个数
+	 *
+	 * @return
+	 */
+	public long remaining() {
+		long left = maxId - cursor.get() + 1;
+		return left > 0 ? left : 0;
+	}
+
+	/**
+	 * 最后分配的值
+	 *
+	 * @return 号段内还没有分配过时返回minId - 1
+	 */
+	public long lastIssued() {
+		long id = cursor.get() - 1;
+		return id < maxId ? id : maxId;
+	}
+
+	/**
+	 * 号段总大小
+	 *
+	 * @return
+	 */
+	public long size() {
+		return maxId - minId + 1;
+	}
+
+	public long getMinId() {
+		return minId;
+	}
+
+	public long getMaxId() {
+		return maxId;
+	}
+
+	@Override
+	public String toString() {
+		return "Segment[" + minId + ", " + maxId + "], remaining=" + remaining();
+	}
+}
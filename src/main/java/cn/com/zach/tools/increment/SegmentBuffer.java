@@ -0,0 +1,574 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 双缓冲号段: 当前号段剩余量低于阈值时, 由后台线程提前申请下一个号段;
+ * 取号只在当前号段上做原子自增, 只有两个号段都用完时调用线程才会等待存储.
+ * 异步取号在当前号段或预取好的号段有余量时直接返回已完成的future, 否则在补充线程池中等待存储, 调用线程不会阻塞.
+ *
+ * @author zach
+ */
+public class SegmentBuffer {
+
+	/**
+	 * 号段加载器, 负责从存储中申请指定大小的号段
+	 */
+	public interface SegmentLoader {
+
+		/**
+		 * 申请号段
+		 *
+		 * @param size
+		 *            号段大小
+		 * @return
+		 */
+		Segment load(int size);
+	}
+
+	/**
+	 * 默认预取阈值: 当前号段剩余20%时预取下一个号段
+	 */
+	public static final double DEFAULT_PREFETCH_THRESHOLD = 0.2;
+
+	/**
+	 * 默认线程池线程数, 访问存储以等待为主, 不少于4个
+	 */
+	private static final int DEFAULT_POOL_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * 默认后台预取线程池, 守护线程, 所有号段共享; 队列满时预取被拒绝, 由取号线程同步申请
+	 */
+	private static final ExecutorService DEFAULT_EXECUTOR = newDaemonPool("segment-prefetch-%d", 1024);
+
+	/**
+	 * 默认异步补充线程池, 守护线程, 所有号段共享; 与预取线程池分开, 避免补充任务等待排在自己后面的预取任务.
+	 * 队列满时异步取号返回异常完成的future
+	 */
+	static final ExecutorService DEFAULT_REFILL_EXECUTOR = newDaemonPool("segment-refill-%d", 4096);
+
+	/**
+	 * 号段加载器
+	 */
+	private final SegmentLoader loader;
+
+	/**
+	 * 后台预取执行器
+	 */
+	private final Executor executor;
+
+	/**
+	 * 异步取号时号段用完后等待存储的执行器
+	 */
+	private volatile Executor refillExecutor = DEFAULT_REFILL_EXECUTOR;
+
+	/**
+	 * 每次申请号段大小
+	 */
+	private volatile int segmentSize;
+
+	/**
+	 * 自适应块大小, 为空时固定使用segmentSize
+	 */
+	private volatile AdaptiveBlockSize adaptiveBlockSize;
+
+	/**
+	 * 统计监听, 记录取号线程等待锁和等待预取的时间
+	 */
+	private volatile SequenceListener listener;
+
+	/**
+	 * 监听回调中使用的序列名称
+	 */
+	private volatile String sequenceName;
+
+	/**
+	 * 预取阈值, 当前号段剩余比例低于该值时预取
+	 */
+	private volatile double prefetchThreshold = DEFAULT_PREFETCH_THRESHOLD;
+
+	/**
+	 * 当前使用的号段
+	 */
+	private volatile Segment current;
+
+	/**
+	 * 预取好的下一个号段
+	 */
+	private final AtomicReference<Segment> next = new AtomicReference<Segment>();
+
+	/**
+	 * 是否正在后台预取
+	 */
+	private final AtomicBoolean loading = new AtomicBoolean(false);
+
+	/**
+	 * 最近一次后台预取失败的异常, 在下一次同步切换号段时抛出
+	 */
+	private final AtomicReference<RuntimeException> prefetchFailure = new AtomicReference<RuntimeException>();
+
+	/**
+	 * 切换号段的锁
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 后台预取完成
+	 */
+	private final Condition loaded = lock.newCondition();
+
+	public SegmentBuffer(SegmentLoader loader, int segmentSize) {
+		this(loader, segmentSize, DEFAULT_EXECUTOR);
+	}
+
+	public SegmentBuffer(SegmentLoader loader, int segmentSize, Executor executor) {
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("号段大小必须大于0: " + segmentSize);
+		}
+		this.loader = loader;
+		this.segmentSize = segmentSize;
+		this.executor = executor == null ? DEFAULT_EXECUTOR : executor;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(int segmentSize) {
+		if (segmentSize > 0) {
+			this.segmentSize = segmentSize;
+		}
+	}
+
+	public AdaptiveBlockSize getAdaptiveBlockSize() {
+		return adaptiveBlockSize;
+	}
+
+	public void setAdaptiveBlockSize(AdaptiveBlockSize adaptiveBlockSize) {
+		this.adaptiveBlockSize = adaptiveBlockSize;
+	}
+
+	public Executor getRefillExecutor() {
+		return refillExecutor;
+	}
+
+	/**
+	 * 设置异步补充执行器, 不能与预取执行器共用单线程执行器
+	 *
+	 * @param refillExecutor
+	 */
+	public void setRefillExecutor(Executor refillExecutor) {
+		this.refillExecutor = refillExecutor == null ? DEFAULT_REFILL_EXECUTOR : refillExecutor;
+	}
+
+	public SequenceListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * 设置统计监听
+	 *
+	 * @param listener
+	 * @param sequenceName
+	 *            回调中使用的序列名称
+	 */
+	public void setListener(SequenceListener listener, String sequenceName) {
+		this.sequenceName = sequenceName;
+		this.listener = listener;
+	}
+
+	public double getPrefetchThreshold() {
+		return prefetchThreshold;
+	}
+
+	public void setPrefetchThreshold(double prefetchThreshold) {
+		if (prefetchThreshold >= 0 && prefetchThreshold < 1) {
+			this.prefetchThreshold = prefetchThreshold;
+		}
+	}
+
+	/**
+	 * 获取下一个值, 当前号段有余量时不加锁
+	 *
+	 * @return
+	 */
+	public long nextId() {
+		for (;;) {
+			Segment segment = current;
+			long id = tryNext(segment);
+			if (id != Segment.EXHAUSTED) {
+				return id;
+			}
+			switchSegment(segment);
+		}
+	}
+
+	/**
+	 * 异步获取下一个值, 当前号段或预取好的号段有余量时返回已完成的future, 否则在补充执行器中切换号段
+	 *
+	 * @return
+	 */
+	public CompletableFuture<Long> nextIdAsync() {
+		Segment segment = current;
+		long id = tryNext(segment);
+		if (id == Segment.EXHAUSTED && segment != null && trySwitchSegment(segment)) {
+			id = tryNext(current);
+		}
+		if (id != Segment.EXHAUSTED) {
+			return CompletableFuture.completedFuture(id);
+		}
+		return supplyAsync(new Supplier<Long>() {
+			@Override
+			public Long get() {
+				return nextId();
+			}
+		}, refillExecutor);
+	}
+
+	/**
+	 * 在指定号段上取号, 不等待
+	 *
+	 * @param segment
+	 * @return 号段为空或已用完返回{@link Segment#EXHAUSTED}
+	 */
+	private long tryNext(Segment segment) {
+		if (segment == null) {
+			return Segment.EXHAUSTED;
+		}
+		long id = segment.next();
+		if (id != Segment.EXHAUSTED && next.get() == null
+				&& segment.remaining() <= segment.size() * prefetchThreshold) {
+			prefetch();
+		}
+		return id;
+	}
+
+	/**
+	 * 批量获取连续count个值; 当前号段剩余不够时丢弃剩余部分, 切换到预取号段再取;
+	 * 只有count大于号段大小时才直接向存储申请count大小的号段
+	 *
+	 * @param count
+	 * @return
+	 */
+	public LongRange nextRange(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("批量取号个数必须大于0: " + count);
+		}
+		LongRange range = cachedRange(count, true);
+		if (range != null) {
+			return range;
+		}
+		Segment block = loader.load(count);
+		return new LongRange(block.getMinId(), count);
+	}
+
+	/**
+	 * 异步批量获取连续count个值, 规则同{@link #nextRange(int)}; 当前号段或预取好的号段能满足时返回已完成的future,
+	 * 需要等待预取或访问存储时在补充执行器中完成
+	 *
+	 * @param count
+	 * @return
+	 */
+	public CompletableFuture<LongRange> nextRangeAsync(final int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("批量取号个数必须大于0: " + count);
+		}
+		LongRange range = cachedRange(count, false);
+		if (range != null) {
+			return CompletableFuture.completedFuture(range);
+		}
+		return supplyAsync(new Supplier<LongRange>() {
+			@Override
+			public LongRange get() {
+				return nextRange(count);
+			}
+		}, refillExecutor);
+	}
+
+	/**
+	 * 在缓存的号段上批量取号: 当前号段剩余不够时丢弃剩余部分, 切换到预取号段再取
+	 *
+	 * @param count
+	 * @param wait
+	 *            是否等待: true时等待预取或同步申请号段, false时只使用已预取好的号段
+	 * @return count大于号段大小, 或者不等待时需要等待预取或访问存储, 返回null
+	 */
+	private LongRange cachedRange(int count, boolean wait) {
+		for (;;) {
+			Segment segment = current;
+			LongRange range = tryRange(segment, count);
+			if (range != null) {
+				return range;
+			}
+			if (count > segmentSize || segment != null && segment.size() < count) {
+				return null;
+			}
+			if (wait) {
+				switchSegment(segment);
+			} else if (segment == null || !trySwitchSegment(segment)) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * 在指定号段内批量取号, 不等待
+	 *
+	 * @param segment
+	 * @param count
+	 * @return 号段为空或剩余不够时返回null
+	 */
+	private LongRange tryRange(Segment segment, int count) {
+		if (segment == null) {
+			return null;
+		}
+		long first = segment.take(count);
+		if (first == Segment.EXHAUSTED) {
+			return null;
+		}
+		if (next.get() == null && segment.remaining() <= segment.size() * prefetchThreshold) {
+			prefetch();
+		}
+		return new LongRange(first, count);
+	}
+
+	/**
+	 * 预热: 没有当前号段时同步申请第一个号段
+	 */
+	public void warmUp() {
+		lock.lock();
+		try {
+			if (current == null) {
+				current = loader.load(nextSegmentSize());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 当前号段剩余个数
+	 *
+	 * @return
+	 */
+	public long remaining() {
+		Segment segment = current;
+		return segment == null ? 0 : segment.remaining();
+	}
+
+	/**
+	 * 当前号段最后分配的值
+	 *
+	 * @return 还没有号段时返回0
+	 */
+	public long lastIssued() {
+		Segment segment = current;
+		return segment == null ? 0 : segment.lastIssued();
+	}
+
+	/**
+	 * 预取好还未使用的号段个数
+	 *
+	 * @return
+	 */
+	public long prefetched() {
+		Segment segment = next.get();
+		return segment == null ? 0 : segment.remaining();
+	}
+
+	/**
+	 * 后台预取下一个号段, 同一时刻只有一个预取任务
+	 */
+	private void prefetch() {
+		if (!loading.compareAndSet(false, true)) {
+			return;
+		}
+		if (next.get() != null) {
+			// 上一个预取任务已经完成
+			loadFinished();
+			return;
+		}
+		final int size = nextSegmentSize();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						next.set(loader.load(size));
+						prefetchFailure.set(null);
+					} catch (RuntimeException e) {
+						// 预取失败保存下来, 取号线程切换号段时抛出, 之后的切换同步重试
+						prefetchFailure.set(e);
+					} finally {
+						loadFinished();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loadFinished();
+		}
+	}
+
+	/**
+	 * 本次申请号段大小
+	 *
+	 * @return
+	 */
+	private int nextSegmentSize() {
+		AdaptiveBlockSize adaptive = adaptiveBlockSize;
+		return adaptive == null ? segmentSize : adaptive.next(segmentSize);
+	}
+
+	private void loadFinished() {
+		lock.lock();
+		try {
+			loading.set(false);
+			loaded.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 当前号段用完, 切换到预取号段; 预取中则等待预取完成, 没有预取号段则同步申请.
+	 * 后台预取失败且没有预取号段时抛出预取的异常, 异常只抛出一次, 下一次切换同步申请.
+	 * 等待锁和等待预取的时间通知监听, 同步申请的耗时由加载器的onRefill统计
+	 *
+	 * @param exhausted
+	 *            已用完的号段
+	 */
+	private void switchSegment(Segment exhausted) {
+		lock();
+		try {
+			if (current != exhausted) {
+				// 其他线程已经切换
+				return;
+			}
+			awaitPrefetch();
+			Segment prepared = next.getAndSet(null);
+			if (prepared == null) {
+				RuntimeException failure = prefetchFailure.getAndSet(null);
+				if (failure != null) {
+					throw failure;
+				}
+				prepared = loader.load(nextSegmentSize());
+			}
+			current = prepared;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 不等待地切换到预取好的号段: 锁被占用, 正在预取或没有预取号段时不切换
+	 *
+	 * @param exhausted
+	 *            已用完的号段
+	 * @return 已经切换(包括其他线程已切换)返回true
+	 */
+	private boolean trySwitchSegment(Segment exhausted) {
+		if (!lock.tryLock()) {
+			return false;
+		}
+		try {
+			if (current != exhausted) {
+				return true;
+			}
+			if (loading.get()) {
+				return false;
+			}
+			Segment prepared = next.getAndSet(null);
+			if (prepared == null) {
+				return false;
+			}
+			current = prepared;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 加锁, 发生竞争时把等待时间通知监听
+	 */
+	private void lock() {
+		if (lock.tryLock()) {
+			return;
+		}
+		SequenceListener l = listener;
+		if (l == null) {
+			lock.lock();
+			return;
+		}
+		long start = System.nanoTime();
+		lock.lock();
+		l.onLockWait(sequenceName, System.nanoTime() - start);
+	}
+
+	/**
+	 * 持有锁时等待正在进行的后台预取完成, 发生等待时把等待时间通知监听
+	 */
+	private void awaitPrefetch() {
+		if (!loading.get()) {
+			return;
+		}
+		long start = System.nanoTime();
+		while (loading.get()) {
+			try {
+				loaded.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		SequenceListener l = listener;
+		if (l != null) {
+			l.onLockWait(sequenceName, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * 线程数和队列长度都有上限的守护线程池, 空闲线程60秒后回收
+	 *
+	 * @param nameFormat
+	 * @param queueCapacity
+	 * @return
+	 */
+	private static ExecutorService newDaemonPool(String nameFormat, int queueCapacity) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_POOL_THREADS, DEFAULT_POOL_THREADS, 60,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * 在执行器中异步执行, 执行器拒绝时返回异常完成的future, 不向调用线程抛出
+	 *
+	 * @param supplier
+	 * @param executor
+	 * @return
+	 */
+	static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+		try {
+			return CompletableFuture.supplyAsync(supplier, executor);
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<T> failed = new CompletableFuture<T>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package cn.com.zach.tools.increment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+/**
+ * 基于{@link SequenceStore}的号段缓存序列: 双缓冲号段, 段内取号不加锁, 存储可以是文件, 数据库或内存
+ *
+ * @author zach
+ */
+public class SegmentSequenceIncrementer implements DataFieldMaxValueIncrementer, InitializingBean, DisposableBean,
+		SequenceWarmUp {
+
+	/**
+	 * 序列存储
+	 */
+	private SequenceStore sequenceStore;
+
+	/**
+	 * 序列名称
+	 */
+	private String sequenceName;
+
+	/**
+	 * 每次申请号段大小
+	 */
+	private int blockSize = 1000;
+
+	/**
+	 * 预取阈值, 当前号段剩余比例低于该值时后台预取
+	 */
+	private double prefetchThreshold = SegmentBuffer.DEFAULT_PREFETCH_THRESHOLD;
+
+	/**
+	 * 自适应块大小, 为空时固定使用blockSize
+	 */
+	private AdaptiveBlockSize adaptiveBlockSize;
+
+	/**
+	 * 异步取号时号段用完后等待存储的执行器, 为空时使用共享的补充线程池
+	 */
+	private Executor refillExecutor;
+
+	/**
+	 * 统计监听, 序列名称为sequenceName
+	 */
+	private volatile SequenceListener sequenceListener;
+
+	/**
+	 * 前导0个数
+	 */
+	private int paddingLength = 0;
+
+	/**
+	 * 双缓冲号段, 创建后号段相关的设置直接同步到号段
+	 */
+	private volatile SegmentBuffer segmentBuffer;
+
+	public SegmentSequenceIncrementer() {
+	}
+
+	/**
+	 * 创建并初始化, 之后调用的块大小, 预取阈值, 自适应块大小, 补充执行器和监听的设置仍然生效
+	 *
+	 * @param sequenceStore
+	 * @param sequenceName
+	 * @param blockSize
+	 */
+	public SegmentSequenceIncrementer(SequenceStore sequenceStore, String sequenceName, int blockSize) {
+		this.sequenceStore = sequenceStore;
+		this.sequenceName = sequenceName;
+		this.blockSize = blockSize;
+		afterPropertiesSet();
+	}
+
+	public SequenceStore getSequenceStore() {
+		return sequenceStore;
+	}
+
+	public void setSequenceStore(SequenceStore sequenceStore) {
+		this.sequenceStore = sequenceStore;
+	}
+
+	public String getSequenceName() {
+		return sequenceName;
+	}
+
+	public void setSequenceName(String sequenceName) {
+		this.sequenceName = sequenceName;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			buffer.setSegmentSize(blockSize);
+		}
+	}
+
+	public double getPrefetchThreshold() {
+		return prefetchThreshold;
+	}
+
+	public void setPrefetchThreshold(double prefetchThreshold) {
+		this.prefetchThreshold = prefetchThreshold;
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			buffer.setPrefetchThreshold(prefetchThreshold);
+		}
+	}
+
+	public AdaptiveBlockSize getAdaptiveBlockSize() {
+		return adaptiveBlockSize;
+	}
+
+	public void setAdaptiveBlockSize(AdaptiveBlockSize adaptiveBlockSize) {
+		this.adaptiveBlockSize = adaptiveBlockSize;
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			buffer.setAdaptiveBlockSize(adaptiveBlockSize);
+		}
+	}
+
+	public Executor getRefillExecutor() {
+		return refillExecutor;
+	}
+
+	public void setRefillExecutor(Executor refillExecutor) {
+		this.refillExecutor = refillExecutor;
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			buffer.setRefillExecutor(refillExecutor);
+		}
+	}
+
+	public SequenceListener getSequenceListener() {
+		return sequenceListener;
+	}
+
+	public void setSequenceListener(SequenceListener sequenceListener) {
+		this.sequenceListener = sequenceListener;
+		SegmentBuffer buffer = this.segmentBuffer;
+		if (buffer != null) {
+			buffer.setListener(sequenceListener, sequenceName);
+		}
+	}
+
+	public int getPaddingLength() {
+		return paddingLength;
+	}
+
+	public void setPaddingLength(int paddingLength) {
+		this.paddingLength = paddingLength;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (sequenceStore == null) {
+			throw new IllegalArgumentException("sequenceStore不能为空");
+		}
+		if (sequenceName == null || sequenceName.length() == 0) {
+			throw new IllegalArgumentException("sequenceName不能为空");
+		}
+		final SequenceStore store = sequenceStore;
+		final String name = sequenceName;
+		SegmentBuffer buffer = new SegmentBuffer(new SegmentBuffer.SegmentLoader() {
+			@Override
+			public Segment load(int size) {
+				SequenceListener listener = sequenceListener;
+				long start = listener == null ? 0 : System.nanoTime();
+				LongRange range = store.reserve(name, size);
+				if (listener != null) {
+					listener.onRefill(name, size, System.nanoTime() - start);
+				}
+				return new Segment(range.getFirst(), range.getLast());
+			}
+		}, blockSize);
+		buffer.setPrefetchThreshold(prefetchThreshold);
+		buffer.setAdaptiveBlockSize(adaptiveBlockSize);
+		buffer.setRefillExecutor(refillExecutor);
+		buffer.setListener(sequenceListener, name);
+		this.segmentBuffer = buffer;
+	}
+
+	@Override
+	public long nextLongValue() throws DataAccessException {
+		return segmentBuffer.nextId();
+	}
+
+	@Override
+	public void warmUp() throws DataAccessException {
+		segmentBuffer.warmUp();
+	}
+
+	/**
+	 * 批量获取连续count个值
+	 *
+	 * @param count
+	 * @return
+	 */
+	public LongRange nextLongValues(int count) throws DataAccessException {
+		return segmentBuffer.nextRange(count);
+	}
+
+	/**
+	 * 异步获取下一个值, 当前号段有余量时返回已完成的future, 否则在补充执行器中向存储申请
+	 *
+	 * @return
+	 */
+	public CompletableFuture<Long> nextLongValueAsync() {
+		return segmentBuffer.nextIdAsync();
+	}
+
+	/**
+	 * 异步批量获取连续count个值
+	 *
+	 * @param count
+	 * @return
+	 */
+	public CompletableFuture<LongRange> nextLongValuesAsync(int count) {
+		return segmentBuffer.nextRangeAsync(count);
+	}
+
+	/**
+	 * 批量取号填满ids数组
+	 *
+	 * @param ids
+	 */
+	public void nextLongValues(long[] ids) throws DataAccessException {
+		if (ids.length > 0) {
+			nextLongValues(ids.length).fill(ids, 0);
+		}
+	}
+
+	@Override
+	public int nextIntValue() throws DataAccessException {
+		return (int) nextLongValue();
+	}
+
+	@Override
+	public String nextStringValue() throws DataAccessException {
+		String s = Long.toString(nextLongValue());
+		int len = s.length();
+		if (len < this.paddingLength) {
+			StringBuilder sb = new StringBuilder(this.paddingLength);
+			for (int i = 0; i < this.paddingLength - len; i++) {
+				sb.append('0');
+			}
+			sb.append(s);
+			s = sb.toString();
+		}
+		return s;
+	}
+
+	/**
+	 * 当前号段剩余个数
+	 *
+	 * @return
+	 */
+	public long remaining() {
+		return segmentBuffer.remaining();
+	}
+
+	/**
+	 * 关闭时把丢弃的号码个数(当前号段剩余和预取号段)通知监听
+	 */
+	@Override
+	public void destroy() {
+		if (sequenceListener != null && segmentBuffer != null) {
+			sequenceListener.onDestroy(sequenceName, segmentBuffer.remaining() + segmentBuffer.prefetched());
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package cn.com.zach.tools.increment;
+
+/**
+ * 序列事件监听, 用于统计序列块申请次数, 耗时, 锁等待和关闭时丢弃的号码, 根据数据调整块大小.
+ * 回调在取号线程或预取线程中同步执行, 实现必须是线程安全的且不能阻塞.
+ *
+ * @author zach
+ */
+public interface SequenceListener {
+
+	/**
+	 * 向存储申请了一个序列块(写文件或执行nextblock)
+	 *
+	 * @param sequenceName
+	 *            序列名称
+	 * @param blockSize
+	 *            块大小
+	 * @param elapsedNanos
+	 *            申请耗时(纳秒)
+	 */
+	void onRefill(String sequenceName, int blockSize, long elapsedNanos);
+
+	/**
+	 * 取号线程等待锁或等待号段切换, 只在发生等待时回调
+	 *
+	 * @param sequenceName
+	 *            序列名称
+	 * @param waitNanos
+	 *            等待时间(纳秒)
+	 */
+	void onLockWait(String sequenceName, long waitNanos);
+
+	/**
+	 * 序列关闭, 缓存中未使用的号码被丢弃, 形成空洞
+	 *
+	 * @param sequenceName
+	 *            序列名称
+	 * @param discarded
+	 *            丢弃的号码个数
+	 */
+	void onDestroy(String sequenceName, long discarded);
+}
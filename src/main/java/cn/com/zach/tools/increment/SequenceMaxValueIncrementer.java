@@ -1,6 +1,8 @@
 
 package cn.com.zach.tools.increment;
 
+import org.springframework.dao.DataAccessException;
+
 /**
  * 自增加1序列生成
  * 
@@ -23,6 +25,99 @@ public class SequenceMaxValueIncrementer extends AbstractLocalSequenceMaxValueIn
 	 */
 	private volatile long maxId = 0;
 
+	/**
+	 * 分段数, 大于0时开启分段取号: 每个分段从当前块中领取一个子块, 段内取号不加锁; 不同线程之间的id不保证有序
+	 */
+	private int stripes = 0;
+
+	/**
+	 * 每个分段每次领取的子块大小, 0表示blockSize / stripes
+	 */
+	private int stripeBlockSize = 0;
+
+	/**
+	 * 分段, 按线程id分配
+	 */
+	private Stripe[] stripeArray = null;
+
+	/**
+	 * @return the stripes
+	 */
+	public int getStripes() {
+		return stripes;
+	}
+
+	/**
+	 * @param stripes
+	 *            the stripes to set
+	 */
+	public void setStripes(int stripes) {
+		if (stripes >= 0) {
+			this.stripes = stripes;
+		}
+	}
+
+	/**
+	 * @return the stripeBlockSize
+	 */
+	public int getStripeBlockSize() {
+		return stripeBlockSize;
+	}
+
+	/**
+	 * @param stripeBlockSize
+	 *            the stripeBlockSize to set
+	 */
+	public void setStripeBlockSize(int stripeBlockSize) {
+		if (stripeBlockSize >= 0) {
+			this.stripeBlockSize = stripeBlockSize;
+		}
+	}
+
+	@Override
+	public long nextLongValue() {
+		Stripe[] array = this.stripeArray;
+		if (array == null) {
+			return super.nextLongValue();
+		}
+		Stripe stripe = array[(int) (Thread.currentThread().getId() % array.length)];
+		for (;;) {
+			Segment segment = stripe.segment;
+			if (segment != null) {
+				long id = segment.next();
+				if (id != Segment.EXHAUSTED) {
+					return id;
+				}
+			}
+			synchronized (stripe) {
+				if (stripe.segment == segment) {
+					// 子块用完, 从当前块中领取新的子块, 只有这里需要父类的锁; 当前块剩余不足一个子块时领取剩余部分
+					LongRange range = nextRange(stripeBlockSize, true);
+					stripe.segment = new Segment(range.getFirst(), range.getLast());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 批量获取连续count个值, 只加一次锁; 步长不为1时序列值不连续, 请使用{@link #nextLongValues(long[])}
+	 * 
+	 * @param count
+	 * @return
+	 * @throws UnsupportedOperationException
+	 *             步长不为1
+	 */
+	public LongRange nextLongValues(int count) throws DataAccessException {
+		if (count < 1) {
+			throw new IllegalArgumentException("批量取号个数必须大于0: " + count);
+		}
+		LongRange range = nextRange(count);
+		if (range == null) {
+			throw new UnsupportedOperationException("步长为" + delta + "时不支持连续批量取号");
+		}
+		return range;
+	}
+
 	@Override
 	protected long getNextKey() {
 		/**
@@ -31,12 +126,51 @@ public class SequenceMaxValueIncrementer extends AbstractLocalSequenceMaxValueIn
 		long answer = 0;
 		answer = nextId = nextId + delta;
 		if (nextId >= maxId) {
-			long nextBlock = applyNextBlock(blockSize);
-			this.maxId = nextBlock;
+			refill();
 		}
 		return answer;
 	}
 
+	@Override
+	protected LongRange getNextRange(int count, boolean partial) {
+		if (delta != 1) {
+			return null;
+		}
+		long remaining = maxId - nextId;
+		if (remaining < count) {
+			if (partial && remaining > 0) {
+				count = (int) remaining;
+			} else if (count <= blockSize) {
+				// 丢弃当前块剩余的不足count个值, 申请新块后从新块中切分, 每个块只写一次文件
+				this.nextId = maxId;
+				refill();
+			}
+			if (maxId - nextId < count) {
+				// 大于块大小的批量直接申请count大小的块, 当前块保留继续使用
+				long nextBlock = applyNextBlock(count);
+				return new LongRange(nextBlock - count + 1, count);
+			}
+		}
+		LongRange range = new LongRange(nextId + 1, count);
+		nextId += count;
+		if (nextId >= maxId) {
+			refill();
+		}
+		return range;
+	}
+
+	/**
+	 * 当前块用完, 申请下一个块; 文件中的值可能被批量取号推进过, 从新块的起始位置继续
+	 */
+	private void refill() {
+		int size = nextBlockSize();
+		long nextBlock = applyNextBlock(size);
+		if (nextBlock - size > nextId) {
+			this.nextId = nextBlock - size;
+		}
+		this.maxId = nextBlock;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		// 判断设置步长是否超过块大小
@@ -44,8 +178,43 @@ public class SequenceMaxValueIncrementer extends AbstractLocalSequenceMaxValueIn
 			delta = 1;
 		}
 		super.afterPropertiesSet();
-		long nextBlock = applyNextBlock(blockSize);
+		int size = nextBlockSize();
+		long nextBlock = applyNextBlock(size);
 		this.maxId = nextBlock;
-		this.nextId = maxId - blockSize + delta;
+		this.nextId = maxId - size + delta;
+		// 分段取号要求连续序列
+		if (stripes > 0 && delta == 1) {
+			if (stripeBlockSize == 0) {
+				stripeBlockSize = Math.max(1, blockSize / stripes);
+			}
+			Stripe[] array = new Stripe[stripes];
+			for (int i = 0; i < stripes; i++) {
+				array[i] = new Stripe();
+			}
+			this.stripeArray = array;
+		}
+	}
+
+	@Override
+	public long remaining() {
+		long remaining = Math.max(0, (maxId - nextId) / delta);
+		Stripe[] array = this.stripeArray;
+		if (array != null) {
+			for (Stripe stripe : array) {
+				Segment segment = stripe.segment;
+				if (segment != null) {
+					remaining += segment.remaining();
+				}
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * 分段, 持有从当前块中领取的子块
+	 */
+	private static final class Stripe {
+
+		private volatile Segment segment;
 	}
 }
@@ -0,0 +1,123 @@
+package cn.com.zach.tools.increment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 默认的序列统计监听: 按序列名称分别统计块申请次数, 申请号码总数, 申请耗时直方图, 锁等待直方图和关闭时丢弃的号码数.
+ * 多个incrementer可以共用一个实例.
+ *
+ * @author zach
+ */
+public class SequenceMetrics implements SequenceListener {
+
+	private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	@Override
+	public void onRefill(String sequenceName, int blockSize, long elapsedNanos) {
+		Stats s = stats(sequenceName);
+		s.refillCount.incrementAndGet();
+		s.refilledIds.addAndGet(blockSize);
+		s.refillLatency.record(elapsedNanos);
+	}
+
+	@Override
+	public void onLockWait(String sequenceName, long waitNanos) {
+		stats(sequenceName).lockWait.record(waitNanos);
+	}
+
+	@Override
+	public void onDestroy(String sequenceName, long discarded) {
+		stats(sequenceName).discarded.addAndGet(discarded);
+	}
+
+	private Stats stats(String sequenceName) {
+		Stats s = stats.get(sequenceName);
+		if (s == null) {
+			Stats created = new Stats();
+			s = stats.putIfAbsent(sequenceName, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * 已统计的序列
+	 *
+	 * @return
+	 */
+	public Map<String, Stats> getStats() {
+		return stats;
+	}
+
+	/**
+	 * 指定序列的统计, 没有数据时返回空统计
+	 *
+	 * @param sequenceName
+	 * @return
+	 */
+	public Stats getStats(String sequenceName) {
+		return stats(sequenceName);
+	}
+
+	/**
+	 * 单个序列的统计
+	 */
+	public static class Stats {
+
+		private final AtomicLong refillCount = new AtomicLong();
+
+		private final AtomicLong refilledIds = new AtomicLong();
+
+		private final AtomicLong discarded = new AtomicLong();
+
+		private final LatencyHistogram refillLatency = new LatencyHistogram();
+
+		private final LatencyHistogram lockWait = new LatencyHistogram();
+
+		/**
+		 * 块申请次数
+		 */
+		public long getRefillCount() {
+			return refillCount.get();
+		}
+
+		/**
+		 * 申请的号码总数
+		 */
+		public long getRefilledIds() {
+			return refilledIds.get();
+		}
+
+		/**
+		 * 关闭时丢弃的号码数
+		 */
+		public long getDiscarded() {
+			return discarded.get();
+		}
+
+		/**
+		 * 块申请耗时
+		 */
+		public LatencyHistogram getRefillLatency() {
+			return refillLatency;
+		}
+
+		/**
+		 * 锁等待时间
+		 */
+		public LatencyHistogram getLockWait() {
+			return lockWait;
+		}
+
+		@Override
+		public String toString() {
+			return "refillCount=" + getRefillCount() + ", refilledIds=" + getRefilledIds() + ", discarded="
+					+ getDiscarded() + ", refillLatency[" + refillLatency + "], lockWait[" + lockWait + "]";
+		}
+	}
+}
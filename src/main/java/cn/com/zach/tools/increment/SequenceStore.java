@@ -0,0 +1,26 @@
+package cn.com.zach.tools.increment;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * 序列存储: 负责为命名序列持久化地申请连续序列块, 由{@link SegmentSequenceIncrementer}在其上做号段缓存.
+ * 实现: 本地文件{@link FileSequenceStore}, 多序列映射文件{@link LocalSequenceRegistry}, 数据库{@link JdbcSequenceStore},
+ * 内存{@link InMemorySequenceStore}.
+ *
+ * @author zach
+ */
+public interface SequenceStore {
+
+	/**
+	 * 为指定序列申请连续size个值, 同一序列多次申请的区间不重叠
+	 *
+	 * @param name
+	 *            序列名称
+	 * @param size
+	 *            块大小
+	 * @return 申请到的区间
+	 * @throws DataAccessException
+	 *             存储访问失败
+	 */
+	LongRange reserve(String name, int size) throws DataAccessException;
+}
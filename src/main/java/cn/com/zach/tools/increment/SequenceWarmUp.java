@@ -0,0 +1,19 @@
+package cn.com.zach.tools.increment;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * 支持预热的序列: 启动时提前申请第一个号段, 第一次取号不再访问存储.
+ * 由{@link SequenceWarmUpRunner}在spring容器启动时并行调用.
+ *
+ * @author zach
+ */
+public interface SequenceWarmUp {
+
+	/**
+	 * 申请第一个号段, 已有号段时不做任何事; 多次调用和并发调用都是安全的
+	 *
+	 * @throws DataAccessException
+	 */
+	void warmUp() throws DataAccessException;
+}
@@ -0,0 +1,193 @@
+package cn.com.zach.tools.increment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 启动预热: 容器中所有单例创建完成后, 并行调用所有{@link SequenceWarmUp}序列的warmUp, 申请第一个号段,
+ * 第一批请求不再等待数据库或文件. 在spring配置中声明本bean即开启预热; 也可以手动设置序列后调用{@link #warmUp()}.
+ *
+ * @author zach
+ */
+public class SequenceWarmUpRunner implements BeanFactoryAware, SmartInitializingSingleton {
+
+	/**
+	 * 并行线程数
+	 */
+	private int parallelism = 8;
+
+	/**
+	 * 等待全部预热完成的最长时间(毫秒)
+	 */
+	private long timeoutMillis = 30000;
+
+	/**
+	 * 预热失败时是否中断启动, false时只打印失败和超时的序列, 失败的序列在第一次取号时再申请
+	 */
+	private boolean failFast = false;
+
+	/**
+	 * 需要预热的序列, 为空时从容器中查找
+	 */
+	private Map<String, SequenceWarmUp> sequences;
+
+	private ListableBeanFactory beanFactory;
+
+	/**
+	 * 上一次预热耗时(毫秒)
+	 */
+	private volatile long elapsedMillis = -1;
+
+	/**
+	 * 上一次预热成功的序列数
+	 */
+	private volatile int warmedCount = 0;
+
+	/**
+	 * 上一次预热失败的序列名称
+	 */
+	private volatile List<String> failedNames = new ArrayList<String>();
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		if (parallelism > 0) {
+			this.parallelism = parallelism;
+		}
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public void setTimeoutMillis(long timeoutMillis) {
+		if (timeoutMillis > 0) {
+			this.timeoutMillis = timeoutMillis;
+		}
+	}
+
+	public boolean isFailFast() {
+		return failFast;
+	}
+
+	public void setFailFast(boolean failFast) {
+		this.failFast = failFast;
+	}
+
+	public Map<String, SequenceWarmUp> getSequences() {
+		return sequences;
+	}
+
+	public void setSequences(Map<String, SequenceWarmUp> sequences) {
+		this.sequences = sequences;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public int getWarmedCount() {
+		return warmedCount;
+	}
+
+	public List<String> getFailedNames() {
+		return failedNames;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+		if (beanFactory instanceof ListableBeanFactory) {
+			this.beanFactory = (ListableBeanFactory) beanFactory;
+		}
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		warmUp();
+	}
+
+	/**
+	 * 并行预热所有序列, 等待完成后打印耗时, 有失败或超时的序列时一并列出
+	 *
+	 * @return 预热耗时(毫秒)
+	 */
+	public long warmUp() {
+		Map<String, SequenceWarmUp> targets = sequences;
+		if (targets == null) {
+			targets = beanFactory == null ? new LinkedHashMap<String, SequenceWarmUp>()
+					: beanFactory.getBeansOfType(SequenceWarmUp.class, false, true);
+		}
+		long start = System.nanoTime();
+		List<String> failed = new ArrayList<String>();
+		List<String> timedOut = new ArrayList<String>();
+		int warmed = 0;
+		if (!targets.isEmpty()) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, targets.size()),
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sequence-warmup-%d").build());
+			try {
+				Map<String, Future<?>> futures = new LinkedHashMap<String, Future<?>>();
+				for (final Map.Entry<String, SequenceWarmUp> entry : targets.entrySet()) {
+					futures.put(entry.getKey(), executor.submit(new Runnable() {
+						@Override
+						public void run() {
+							entry.getValue().warmUp();
+						}
+					}));
+				}
+				long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+				for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+					try {
+						entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+						warmed++;
+					} catch (ExecutionException e) {
+						failed.add(entry.getKey());
+						e.getCause().printStackTrace();
+					} catch (TimeoutException e) {
+						failed.add(entry.getKey());
+						timedOut.add(entry.getKey());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						failed.add(entry.getKey());
+						break;
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		this.elapsedMillis = elapsed;
+		this.warmedCount = warmed;
+		this.failedNames = failed;
+		String report = warmed + "个成功, 耗时" + elapsed + "毫秒";
+		if (failed.isEmpty()) {
+			System.out.println("序列预热完成: " + report);
+			return elapsed;
+		}
+		report += ", 失败: " + failed + ", 其中超时: " + timedOut;
+		if (failFast) {
+			throw new DataAccessResourceFailureException("序列预热失败: " + report);
+		}
+		System.err.println("序列预热失败: " + report);
+		return elapsed;
+	}
+}
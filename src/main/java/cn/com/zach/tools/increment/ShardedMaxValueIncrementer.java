@@ -0,0 +1,233 @@
+package cn.com.zach.tools.increment;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+
+/**
+ * 带分片位的64位long主键: 0 + 时间戳 + 分片号 + workerId + 毫秒内序列.
+ * 分片号取自调用者传入的路由键(例如sp_id)的低shardBits位, 任何组件只凭id就能用{@link #getShard(long)}定位分片, 不需要路由表.
+ * 每个分片单独一个打包状态(时间戳 << sequenceBits | 序列), 取号只做cas, 不分配对象; 见{@link PackedTimestampSequence}.
+ * 默认位宽: 时间戳41位, 分片6位, workerId 6位, 序列10位.
+ * 每次取号都必须指定路由键, 所以不实现DataFieldMaxValueIncrementer, 不能注入到需要无参取号的地方.
+ *
+ * @author zach
+ */
+public class ShardedMaxValueIncrementer implements InitializingBean {
+
+	/**
+	 * 起始时间, 时间戳部分为当前时间减去起始时间
+	 */
+	private long epoch = SnowflakeMaxValueIncrementer.DEFAULT_EPOCH;
+
+	/**
+	 * 分片位数
+	 */
+	private int shardBits = 6;
+
+	/**
+	 * workerId位数
+	 */
+	private int workerIdBits = 6;
+
+	/**
+	 * 毫秒内序列位数
+	 */
+	private int sequenceBits = 10;
+
+	/**
+	 * 当前节点workerId
+	 */
+	private long workerId = 0;
+
+	/**
+	 * workerId租约, 设置后workerId从租约取得, 租约失效后停止取号
+	 */
+	private WorkerIdLeaseManager workerIdLease;
+
+	/**
+	 * 允许等待的最大时钟回拨毫秒数, 超过直接抛异常
+	 */
+	private long maxBackwardMillis = 5000;
+
+	/**
+	 * 分片号掩码
+	 */
+	private long shardMask;
+
+	/**
+	 * 分片号左移位数
+	 */
+	private int shardShift;
+
+	/**
+	 * 时间戳左移位数
+	 */
+	private int timestampShift;
+
+	/**
+	 * workerId左移后的值
+	 */
+	private long workerPart;
+
+	/**
+	 * 每个分片的打包状态: 上次时间戳 << sequenceBits | 序列
+	 */
+	private PackedTimestampSequence states;
+
+	public ShardedMaxValueIncrementer() {
+	}
+
+	public ShardedMaxValueIncrementer(int shardBits, long workerId) {
+		this.shardBits = shardBits;
+		this.workerId = workerId;
+		afterPropertiesSet();
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
+	public int getShardBits() {
+		return shardBits;
+	}
+
+	public void setShardBits(int shardBits) {
+		this.shardBits = shardBits;
+	}
+
+	public int getWorkerIdBits() {
+		return workerIdBits;
+	}
+
+	public void setWorkerIdBits(int workerIdBits) {
+		this.workerIdBits = workerIdBits;
+	}
+
+	public int getSequenceBits() {
+		return sequenceBits;
+	}
+
+	public void setSequenceBits(int sequenceBits) {
+		this.sequenceBits = sequenceBits;
+	}
+
+	public long getWorkerId() {
+		return workerId;
+	}
+
+	public void setWorkerId(long workerId) {
+		this.workerId = workerId;
+	}
+
+	public WorkerIdLeaseManager getWorkerIdLease() {
+		return workerIdLease;
+	}
+
+	public void setWorkerIdLease(WorkerIdLeaseManager workerIdLease) {
+		this.workerIdLease = workerIdLease;
+	}
+
+	public long getMaxBackwardMillis() {
+		return maxBackwardMillis;
+	}
+
+	public void setMaxBackwardMillis(long maxBackwardMillis) {
+		this.maxBackwardMillis = maxBackwardMillis;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (shardBits < 1 || shardBits > 16 || workerIdBits < 0 || sequenceBits < 1
+				|| shardBits + workerIdBits + sequenceBits > 31) {
+			throw new IllegalArgumentException("位宽设置错误: shardBits=" + shardBits + ", workerIdBits=" + workerIdBits
+					+ ", sequenceBits=" + sequenceBits);
+		}
+		this.workerId = PackedTimestampSequence.resolveWorkerId(workerIdBits, workerId, workerIdLease);
+		this.shardMask = ~(-1L << shardBits);
+		this.shardShift = workerIdBits + sequenceBits;
+		this.timestampShift = shardShift + shardBits;
+		this.workerPart = workerId << sequenceBits;
+		this.states = new PackedTimestampSequence(1 << shardBits, sequenceBits, 63 - timestampShift, maxBackwardMillis,
+				this::timeGen);
+	}
+
+	/**
+	 * 当前时间戳(相对起始时间)
+	 *
+	 * @return
+	 */
+	protected long timeGen() {
+		return System.currentTimeMillis() - epoch;
+	}
+
+	/**
+	 * 路由键对应的分片号, 默认取低shardBits位; 分库规则不同时覆盖此方法, 返回值必须在[0, 2^shardBits)内
+	 *
+	 * @param routingKey
+	 * @return
+	 */
+	public long shardOf(long routingKey) {
+		return routingKey & shardMask;
+	}
+
+	/**
+	 * 按路由键生成主键
+	 *
+	 * @param routingKey
+	 *            路由键, 例如sp_id
+	 * @return
+	 */
+	public long nextLongValue(long routingKey) throws DataAccessException {
+		PackedTimestampSequence.checkLease(workerIdLease, workerId);
+		long shard = shardOf(routingKey);
+		if (shard < 0 || shard > shardMask) {
+			throw new IllegalArgumentException("分片号超出范围[0, " + shardMask + "]: " + shard);
+		}
+		long next = states.next((int) shard);
+		return (states.timestamp(next) << timestampShift) | (shard << shardShift) | workerPart | states.sequence(next);
+	}
+
+	/**
+	 * 按路由键生成字符串主键
+	 *
+	 * @param routingKey
+	 * @return
+	 */
+	public String nextStringValue(long routingKey) throws DataAccessException {
+		return Long.toString(nextLongValue(routingKey));
+	}
+
+	/**
+	 * 从id中解析出分片号
+	 *
+	 * @param id
+	 * @return
+	 */
+	public long getShard(long id) {
+		return (id >>> shardShift) & shardMask;
+	}
+
+	/**
+	 * 从id中解析出生成时间(毫秒)
+	 *
+	 * @param id
+	 * @return
+	 */
+	public long getTimeMillis(long id) {
+		return (id >>> timestampShift) + epoch;
+	}
+
+	/**
+	 * 从id中解析出workerId
+	 *
+	 * @param id
+	 * @return
+	 */
+	public long getWorkerId(long id) {
+		return (id >>> sequenceBits) & ~(-1L << workerIdBits);
+	}
+}
@@ -0,0 +1,179 @@
+package cn.com.zach.tools.increment;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+/**
+ * snowflake算法生成64位long主键, 不访问数据库和文件: 0 + 时间戳 + workerId + 毫秒内序列.
+ * 时间戳和毫秒内序列打包在一个long中, 取号只做cas; 时钟回拨时等待时钟追上, 见{@link PackedTimestampSequence}.
+ * 默认位宽: 时间戳41位, workerId 10位, 序列12位.
+ *
+ * @author zach
+ */
+public class SnowflakeMaxValueIncrementer implements DataFieldMaxValueIncrementer, InitializingBean {
+
+	/**
+	 * 默认起始时间 2018-01-01 00:00:00 UTC
+	 */
+	public static final long DEFAULT_EPOCH = 1514764800000L;
+
+	/**
+	 * 起始时间, 时间戳部分为当前时间减去起始时间
+	 */
+	private long epoch = DEFAULT_EPOCH;
+
+	/**
+	 * workerId位数
+	 */
+	private int workerIdBits = 10;
+
+	/**
+	 * 毫秒内序列位数
+	 */
+	private int sequenceBits = 12;
+
+	/**
+	 * 当前节点workerId
+	 */
+	private long workerId = 0;
+
+	/**
+	 * workerId租约, 设置后workerId从租约取得, 租约失效后停止取号
+	 */
+	private WorkerIdLeaseManager workerIdLease;
+
+	/**
+	 * 允许等待的最大时钟回拨毫秒数, 超过直接抛异常
+	 */
+	private long maxBackwardMillis = 5000;
+
+	/**
+	 * 时间戳左移位数
+	 */
+	private int timestampShift;
+
+	/**
+	 * workerId左移后的值
+	 */
+	private long workerPart;
+
+	/**
+	 * 打包状态: 上次时间戳 << sequenceBits | 序列
+	 */
+	private PackedTimestampSequence state;
+
+	public SnowflakeMaxValueIncrementer() {
+	}
+
+	public SnowflakeMaxValueIncrementer(long workerId) {
+		this.workerId = workerId;
+		afterPropertiesSet();
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
+	public int getWorkerIdBits() {
+		return workerIdBits;
+	}
+
+	public void setWorkerIdBits(int workerIdBits) {
+		this.workerIdBits = workerIdBits;
+	}
+
+	public int getSequenceBits() {
+		return sequenceBits;
+	}
+
+	public void setSequenceBits(int sequenceBits) {
+		this.sequenceBits = sequenceBits;
+	}
+
+	public long getWorkerId() {
+		return workerId;
+	}
+
+	public void setWorkerId(long workerId) {
+		this.workerId = workerId;
+	}
+
+	public WorkerIdLeaseManager getWorkerIdLease() {
+		return workerIdLease;
+	}
+
+	public void setWorkerIdLease(WorkerIdLeaseManager workerIdLease) {
+		this.workerIdLease = workerIdLease;
+	}
+
+	public long getMaxBackwardMillis() {
+		return maxBackwardMillis;
+	}
+
+	public void setMaxBackwardMillis(long maxBackwardMillis) {
+		this.maxBackwardMillis = maxBackwardMillis;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (workerIdBits < 0 || sequenceBits < 1 || workerIdBits + sequenceBits > 31) {
+			throw new IllegalArgumentException(
+					"位宽设置错误: workerIdBits=" + workerIdBits + ", sequenceBits=" + sequenceBits);
+		}
+		this.workerId = PackedTimestampSequence.resolveWorkerId(workerIdBits, workerId, workerIdLease);
+		this.timestampShift = workerIdBits + sequenceBits;
+		this.workerPart = workerId << sequenceBits;
+		this.state = new PackedTimestampSequence(1, sequenceBits, 63 - timestampShift, maxBackwardMillis, this::timeGen);
+	}
+
+	/**
+	 * 当前时间戳(相对起始时间)
+	 *
+	 * @return
+	 */
+	protected long timeGen() {
+		return System.currentTimeMillis() - epoch;
+	}
+
+	@Override
+	public long nextLongValue() throws DataAccessException {
+		PackedTimestampSequence.checkLease(workerIdLease, workerId);
+		long next = state.next(0);
+		return (state.timestamp(next) << timestampShift) | workerPart | state.sequence(next);
+	}
+
+	@Override
+	public int nextIntValue() throws DataAccessException {
+		throw new RuntimeException("snowflake主键不支持int类型生成");
+	}
+
+	@Override
+	public String nextStringValue() throws DataAccessException {
+		return Long.toString(nextLongValue());
+	}
+
+	/**
+	 * 从id中解析出生成时间(毫秒)
+	 *
+	 * @param id
+	 * @return
+	 */
+	public long getTimeMillis(long id) {
+		return (id >>> timestampShift) + epoch;
+	}
+
+	/**
+	 * 从id中解析出workerId
+	 *
+	 * @param id
+	 * @return
+	 */
+	public long getWorkerId(long id) {
+		return (id >>> sequenceBits) & ~(-1L << workerIdBits);
+	}
+}
@@ -1,7 +1,8 @@
 
 package cn.com.zach.tools.increment;
 
-import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
 
 /**
@@ -12,21 +13,9 @@ import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer
 public class UUIDMaxValueIncrementer implements DataFieldMaxValueIncrementer {
 
 	/**
-	 * 本机IP地址
-	 */
-	private static final int IP;
-	/**
-	 * 获取本机ip地址
+	 * 默认节点标识: 网卡地址, 取不到时使用随机数; 第一次生成时才解析, 不做反向DNS查询
 	 */
-	static {
-		int ipadd;
-		try {
-			ipadd = IptoInt(InetAddress.getLocalHost().getAddress());
-		} catch (Exception e) {
-			ipadd = 0;
-		}
-		IP = ipadd;
-	}
+	private static final NodeIdentity DEFAULT_NODE_IDENTITY = NodeIdentity.defaultIdentity();
 
 	/**
 	 * 模拟进程
@@ -34,9 +23,37 @@ public class UUIDMaxValueIncrementer implements DataFieldMaxValueIncrementer {
 	private static final int JVM = (int) (System.currentTimeMillis() >>> 8);
 
 	/**
-	 * 计数器
+	 * 计数器, 取低15位, 超过Short.MAX_VALUE后从0开始
 	 */
-	private static short counter = (short) 0;
+	private static final AtomicInteger COUNTER = new AtomicInteger(0);
+
+	/**
+	 * 字符串形式长度: IP(8) + JVM(8) + 时间高位(4) + 时间低位(8) + 计数器(4)
+	 */
+	public static final int STRING_LENGTH = 32;
+
+	/**
+	 * 二进制形式字节数
+	 */
+	public static final int BYTES_LENGTH = 16;
+
+	/**
+	 * 16进制字符表
+	 */
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * 节点标识来源
+	 */
+	private NodeIdentity nodeIdentity = DEFAULT_NODE_IDENTITY;
+
+	public NodeIdentity getNodeIdentity() {
+		return nodeIdentity;
+	}
+
+	public void setNodeIdentity(NodeIdentity nodeIdentity) {
+		this.nodeIdentity = nodeIdentity == null ? DEFAULT_NODE_IDENTITY : nodeIdentity;
+	}
 
 	public static int IptoInt(byte[] bytes) {
 		int result = 0;
@@ -61,20 +78,16 @@ public class UUIDMaxValueIncrementer implements DataFieldMaxValueIncrementer {
 	 * @return
 	 */
 	protected short getCount() {
-		synchronized (UUIDMaxValueIncrementer.class) {
-			if (counter < 0)
-				counter = 0;
-			return counter++;
-		}
+		return (short) (COUNTER.getAndIncrement() & Short.MAX_VALUE);
 	}
 
 	/**
-	 * ip
+	 * 节点标识, 默认为本机ip
 	 * 
 	 * @return
 	 */
 	protected int getIP() {
-		return IP;
+		return nodeIdentity.getNodeId();
 	}
 
 	/**
@@ -96,17 +109,42 @@ public class UUIDMaxValueIncrementer implements DataFieldMaxValueIncrementer {
 	}
 
 	protected String format(int intval) {
-		String formatted = Integer.toHexString(intval);
-		StringBuffer buf = new StringBuffer("00000000");
-		buf.replace(8 - formatted.length(), 8, formatted);
-		return buf.toString();
+		char[] buf = new char[8];
+		writeHex(buf, 0, intval, 8);
+		return new String(buf);
 	}
 
 	protected String format(short shortval) {
-		String formatted = Integer.toHexString(shortval);
-		StringBuffer buf = new StringBuffer("0000");
-		buf.replace(4 - formatted.length(), 4, formatted);
-		return buf.toString();
+		char[] buf = new char[4];
+		writeHex(buf, 0, shortval, 4);
+		return new String(buf);
+	}
+
+	/**
+	 * 把value的低digits个16进制位写入buf
+	 * 
+	 * @param buf
+	 * @param offset
+	 * @param value
+	 * @param digits
+	 */
+	private static void writeHex(char[] buf, int offset, int value, int digits) {
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			buf[i] = DIGITS[value & 0xf];
+			value >>>= 4;
+		}
+	}
+
+	private static void writeInt(byte[] buf, int offset, int value) {
+		buf[offset] = (byte) (value >>> 24);
+		buf[offset + 1] = (byte) (value >>> 16);
+		buf[offset + 2] = (byte) (value >>> 8);
+		buf[offset + 3] = (byte) value;
+	}
+
+	private static void writeShort(byte[] buf, int offset, short value) {
+		buf[offset] = (byte) (value >>> 8);
+		buf[offset + 1] = (byte) value;
 	}
 
 	@Override
@@ -121,7 +159,51 @@ public class UUIDMaxValueIncrementer implements DataFieldMaxValueIncrementer {
 
 	@Override
 	public String nextStringValue() {
-		return new StringBuffer(36).append(format(getIP())).append(format(getJVM())).append(format(getHiTime()))
-				.append(format(getLoTime())).append(format(getCount())).toString();
+		char[] buf = new char[STRING_LENGTH];
+		writeHex(buf, 0, getIP(), 8);
+		writeHex(buf, 8, getJVM(), 8);
+		writeHex(buf, 16, getHiTime(), 4);
+		writeHex(buf, 20, getLoTime(), 8);
+		writeHex(buf, 28, getCount(), 4);
+		return new String(buf);
+	}
+
+	/**
+	 * 生成16字节二进制uuid, 字段顺序与字符串形式一致
+	 * 
+	 * @return
+	 */
+	public byte[] nextBytesValue() {
+		byte[] buf = new byte[BYTES_LENGTH];
+		nextBytesValue(buf, 0);
+		return buf;
+	}
+
+	/**
+	 * 把16字节二进制uuid写入buf, 不分配内存
+	 * 
+	 * @param buf
+	 * @param offset
+	 */
+	public void nextBytesValue(byte[] buf, int offset) {
+		if (offset < 0 || offset + BYTES_LENGTH > buf.length) {
+			throw new IndexOutOfBoundsException("数组长度不足: offset=" + offset + ", length=" + buf.length);
+		}
+		writeInt(buf, offset, getIP());
+		writeInt(buf, offset + 4, getJVM());
+		writeShort(buf, offset + 8, getHiTime());
+		writeInt(buf, offset + 10, getLoTime());
+		writeShort(buf, offset + 14, getCount());
+	}
+
+	/**
+	 * 以两个long形式生成uuid, pair[0]为高64位(IP + JVM), pair[1]为低64位(时间高位 + 时间低位 + 计数器), 不分配内存
+	 * 
+	 * @param pair
+	 *            长度至少为2
+	 */
+	public void nextLongPair(long[] pair) {
+		pair[0] = ((long) getIP() << 32) | (getJVM() & 0xffffffffL);
+		pair[1] = ((getHiTime() & 0xffffL) << 48) | ((getLoTime() & 0xffffffffL) << 16) | (getCount() & 0xffffL);
 	}
 }
@@ -0,0 +1,198 @@
+package cn.com.zach.tools.increment;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+/**
+ * RFC 9562 UUIDv7主键生成, 按时间有序, 适合作为B-tree索引主键.
+ * 布局: 48位unix毫秒时间戳 + 4位版本(7) + 12位计数器高位 + 2位变体(10) + 4位计数器低位 + 58位随机数.
+ * 毫秒时间戳和16位计数器打包在一个AtomicLong中, 取号只做cas; 计数器用完或时钟回拨时时间戳向前推进1毫秒, 保证单调递增.
+ *
+ * @author zach
+ */
+public class UUIDv7MaxValueIncrementer implements DataFieldMaxValueIncrementer {
+
+	/**
+	 * 标准字符串形式长度(带连字符)
+	 */
+	public static final int STRING_LENGTH = 36;
+
+	/**
+	 * 紧凑16进制字符串长度
+	 */
+	public static final int HEX_LENGTH = 32;
+
+	/**
+	 * 二进制形式字节数
+	 */
+	public static final int BYTES_LENGTH = 16;
+
+	/**
+	 * 计数器位数
+	 */
+	private static final int COUNTER_BITS = 16;
+
+	/**
+	 * 计数器掩码
+	 */
+	private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+	/**
+	 * 16进制字符表
+	 */
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * 打包状态: 毫秒时间戳 << 16 | 计数器
+	 */
+	private final AtomicLong state = new AtomicLong(0);
+
+	/**
+	 * 当前时间毫秒数
+	 *
+	 * @return
+	 */
+	protected long timeGen() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * 生成下一个时间戳和计数器
+	 *
+	 * @return 毫秒时间戳 << 16 | 计数器
+	 */
+	private long nextState() {
+		for (;;) {
+			long current = state.get();
+			long now = timeGen();
+			long next;
+			if (now > (current >>> COUNTER_BITS)) {
+				next = now << COUNTER_BITS;
+			} else {
+				// 同一毫秒或时钟回拨: 计数器加1, 溢出时进位到时间戳
+				next = current + 1;
+			}
+			if (state.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * 生成高64位和低64位
+	 *
+	 * @param pair
+	 *            长度至少为2, pair[0]为高64位, pair[1]为低64位
+	 */
+	public void nextLongPair(long[] pair) {
+		long packed = nextState();
+		long timestamp = packed >>> COUNTER_BITS;
+		long counter = packed & COUNTER_MASK;
+		pair[0] = (timestamp << 16) | 0x7000L | (counter >>> 4);
+		pair[1] = 0x8000000000000000L | ((counter & 0xfL) << 58)
+				| (ThreadLocalRandom.current().nextLong() & 0x03ffffffffffffffL);
+	}
+
+	/**
+	 * 生成java.util.UUID
+	 *
+	 * @return
+	 */
+	public UUID nextUUID() {
+		long[] pair = new long[2];
+		nextLongPair(pair);
+		return new UUID(pair[0], pair[1]);
+	}
+
+	/**
+	 * 生成16字节二进制形式, 字节序与字符串形式一致
+	 *
+	 * @return
+	 */
+	public byte[] nextBytesValue() {
+		byte[] buf = new byte[BYTES_LENGTH];
+		nextBytesValue(buf, 0);
+		return buf;
+	}
+
+	/**
+	 * 把16字节二进制形式写入buf
+	 *
+	 * @param buf
+	 * @param offset
+	 */
+	public void nextBytesValue(byte[] buf, int offset) {
+		if (offset < 0 || offset + BYTES_LENGTH > buf.length) {
+			throw new IndexOutOfBoundsException("数组长度不足: offset=" + offset + ", length=" + buf.length);
+		}
+		long[] pair = new long[2];
+		nextLongPair(pair);
+		for (int i = 0; i < 8; i++) {
+			buf[offset + i] = (byte) (pair[0] >>> (56 - i * 8));
+			buf[offset + 8 + i] = (byte) (pair[1] >>> (56 - i * 8));
+		}
+	}
+
+	/**
+	 * 紧凑16进制形式, 32个字符不带连字符
+	 *
+	 * @return
+	 */
+	public String nextHexValue() {
+		long[] pair = new long[2];
+		nextLongPair(pair);
+		char[] buf = new char[HEX_LENGTH];
+		writeHex(buf, 0, pair[0], 16);
+		writeHex(buf, 16, pair[1], 16);
+		return new String(buf);
+	}
+
+	/**
+	 * 标准字符串形式: xxxxxxxx-xxxx-7xxx-xxxx-xxxxxxxxxxxx
+	 */
+	@Override
+	public String nextStringValue() throws DataAccessException {
+		long[] pair = new long[2];
+		nextLongPair(pair);
+		char[] buf = new char[STRING_LENGTH];
+		writeHex(buf, 0, pair[0] >>> 32, 8);
+		buf[8] = '-';
+		writeHex(buf, 9, pair[0] >>> 16, 4);
+		buf[13] = '-';
+		writeHex(buf, 14, pair[0], 4);
+		buf[18] = '-';
+		writeHex(buf, 19, pair[1] >>> 48, 4);
+		buf[23] = '-';
+		writeHex(buf, 24, pair[1], 12);
+		return new String(buf);
+	}
+
+	@Override
+	public int nextIntValue() throws DataAccessException {
+		throw new RuntimeException("uuid主键不支持int类型生成");
+	}
+
+	@Override
+	public long nextLongValue() throws DataAccessException {
+		throw new RuntimeException("uuid主键不支持long类型生成");
+	}
+
+	/**
+	 * 把value的低digits个16进制位写入buf
+	 *
+	 * @param buf
+	 * @param offset
+	 * @param value
+	 * @param digits
+	 */
+	private static void writeHex(char[] buf, int offset, long value, int digits) {
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			buf[i] = DIGITS[(int) (value & 0xf)];
+			value >>>= 4;
+		}
+	}
+}
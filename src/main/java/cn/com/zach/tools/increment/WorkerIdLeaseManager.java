@@ -0,0 +1,372 @@
+package cn.com.zach.tools.increment;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * workerId租约: 基于mysql.sequence.sql中的sys_sequence表, 每个workerId一行"leaseName.id", current_value保存租约到期时间(数据库时间毫秒).
+ * 启动时用nextval(leaseName)得到起始位置, 依次尝试已过期的workerId, 用条件update抢占; 后台线程按renewInterval续约,
+ * 续约以上次写入的到期时间作为版本做条件update, 租约被其他节点抢走时立即失效; 关闭时释放.
+ * 租约被抢走后续约线程等该workerId再次过期时重新抢占同一个workerId, 成功后恢复有效, 生成器使用的workerId不变, 不需要重启;
+ * 失去和重新取得租约时在System.err打印一行, 续约连续失败时只打印第一次的异常.
+ * 到期时间使用数据库时间, 各节点时钟不需要同步. 取号时不访问数据库, 只检查本地记录的租约有效期.
+ *
+ * @author zach
+ */
+public class WorkerIdLeaseManager implements InitializingBean, DisposableBean {
+
+	/**
+	 * 数据库当前时间(毫秒)
+	 */
+	private static final String DB_NOW = "ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)";
+
+	/**
+	 * 抢占已过期的workerId, 参数依次为有效期, 行名
+	 */
+	private static final String CLAIM_SQL = "UPDATE sys_sequence SET current_value = last_insert_id(" + DB_NOW
+			+ " + ?) WHERE name = ? AND current_value < " + DB_NOW;
+
+	/**
+	 * 数据源
+	 */
+	private DataSource dataSource;
+
+	/**
+	 * 租约名称, sys_sequence中的行名前缀
+	 */
+	private String leaseName = "worker_id";
+
+	/**
+	 * 最大workerId, 必须在生成器workerIdBits的表示范围内(10位为1023, 6位为63), 生成器初始化时检查
+	 */
+	private long maxWorkerId = 1023;
+
+	/**
+	 * 租约有效期(毫秒)
+	 */
+	private long ttlMillis = 60000;
+
+	/**
+	 * 续约间隔(毫秒), 为0时取有效期的1/3
+	 */
+	private long renewIntervalMillis = 0;
+
+	/**
+	 * 当前持有的workerId, -1表示未持有
+	 */
+	private volatile long workerId = -1;
+
+	/**
+	 * 上次写入的到期时间, 续约和释放时作为版本
+	 */
+	private volatile long leaseExpiry = 0;
+
+	/**
+	 * 本地记录的租约有效截止时间(System.nanoTime)
+	 */
+	private volatile long validUntilNanos = 0;
+
+	/**
+	 * 租约是否被其他节点抢走或已释放, 被抢走后由续约线程重新抢占
+	 */
+	private volatile boolean lost = false;
+
+	/**
+	 * 是否已关闭, 关闭后不再续约和重新抢占
+	 */
+	private volatile boolean released = false;
+
+	/**
+	 * 上次续约是否因数据库异常失败, 连续失败时只打印第一次
+	 */
+	private boolean renewFailing = false;
+
+	/**
+	 * 续约线程
+	 */
+	private ScheduledExecutorService scheduler;
+
+	public WorkerIdLeaseManager() {
+	}
+
+	public WorkerIdLeaseManager(DataSource dataSource, long maxWorkerId) {
+		this.dataSource = dataSource;
+		this.maxWorkerId = maxWorkerId;
+		afterPropertiesSet();
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public String getLeaseName() {
+		return leaseName;
+	}
+
+	public void setLeaseName(String leaseName) {
+		this.leaseName = leaseName;
+	}
+
+	public long getMaxWorkerId() {
+		return maxWorkerId;
+	}
+
+	public void setMaxWorkerId(long maxWorkerId) {
+		this.maxWorkerId = maxWorkerId;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	public void setTtlMillis(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	public long getRenewIntervalMillis() {
+		return renewIntervalMillis;
+	}
+
+	public void setRenewIntervalMillis(long renewIntervalMillis) {
+		this.renewIntervalMillis = renewIntervalMillis;
+	}
+
+	@Override
+	public synchronized void afterPropertiesSet() {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("dataSource不能为空");
+		}
+		if (maxWorkerId < 0) {
+			throw new IllegalArgumentException("maxWorkerId不能小于0: " + maxWorkerId);
+		}
+		long interval = renewIntervalMillis > 0 ? renewIntervalMillis : ttlMillis / 3;
+		if (interval < 1 || interval >= ttlMillis) {
+			throw new IllegalArgumentException("续约间隔必须小于租约有效期: ttlMillis=" + ttlMillis + ", renewIntervalMillis="
+					+ renewIntervalMillis);
+		}
+		if (workerId >= 0) {
+			return;
+		}
+		claim();
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("worker-id-lease-%d").build());
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				renew();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 当前持有的workerId
+	 *
+	 * @return
+	 * @throws IllegalStateException
+	 *             未持有租约
+	 */
+	public long getWorkerId() {
+		long id = workerId;
+		if (id < 0) {
+			throw new IllegalStateException("未取得workerId租约");
+		}
+		return id;
+	}
+
+	/**
+	 * 租约是否有效: 没有被抢走且本地记录的有效期未过; 续约失败超过有效期后返回false, 生成器应停止取号
+	 *
+	 * @return
+	 */
+	public boolean isValid() {
+		return workerId >= 0 && !lost && System.nanoTime() - validUntilNanos < 0;
+	}
+
+	/**
+	 * 抢占一个已过期的workerId
+	 */
+	private void claim() throws DataAccessException {
+		Connection con = DataSourceUtils.getConnection(dataSource);
+		try {
+			insertIfAbsent(con, leaseName);
+			long slots = maxWorkerId + 1;
+			long start = nextval(con, leaseName) % slots;
+			for (long i = 0; i < slots; i++) {
+				long id = (start + i) % slots;
+				String name = rowName(id);
+				insertIfAbsent(con, name);
+				long requested = System.nanoTime();
+				long expiry = update(con, CLAIM_SQL, name, -1);
+				if (expiry > 0) {
+					this.leaseExpiry = expiry;
+					this.validUntilNanos = requested + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+					this.lost = false;
+					this.workerId = id;
+					return;
+				}
+			}
+			throw new DataAccessResourceFailureException("没有可用的workerId: 0到" + maxWorkerId + "都已被租用");
+		} catch (SQLException ex) {
+			throw new DataAccessResourceFailureException("workerId租约申请失败", ex);
+		} finally {
+			DataSourceUtils.releaseConnection(con, dataSource);
+		}
+	}
+
+	/**
+	 * 续约, 在续约线程中执行; 数据库异常时等待下次重试, 条件update失败说明租约已被抢走.
+	 * 租约被抢走后每次只尝试重新抢占同一个workerId, 其他节点持有期间条件不满足
+	 */
+	private synchronized void renew() {
+		if (released || workerId < 0) {
+			return;
+		}
+		Connection con = null;
+		try {
+			con = DataSourceUtils.getConnection(dataSource);
+			long requested = System.nanoTime();
+			long expiry;
+			if (lost) {
+				expiry = update(con, CLAIM_SQL, rowName(workerId), -1);
+			} else {
+				expiry = update(con, "UPDATE sys_sequence SET current_value = last_insert_id(" + DB_NOW
+						+ " + ?) WHERE name = ? AND current_value = ?", rowName(workerId), leaseExpiry);
+			}
+			renewFailing = false;
+			if (expiry > 0) {
+				this.leaseExpiry = expiry;
+				this.validUntilNanos = requested + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+				if (lost) {
+					this.lost = false;
+					System.err.println("重新取得workerId租约, 恢复取号: " + rowName(workerId));
+				}
+			} else if (!lost) {
+				// 租约已被其他节点抢占, 取号抛出异常直到重新取得
+				this.lost = true;
+				System.err.println("workerId租约已被其他节点抢占, 停止取号直到重新取得: " + rowName(workerId));
+			}
+		} catch (Exception e) {
+			if (!renewFailing) {
+				renewFailing = true;
+				e.printStackTrace();
+			}
+		} finally {
+			DataSourceUtils.releaseConnection(con, dataSource);
+		}
+	}
+
+	/**
+	 * 释放租约, 其他节点可以立即使用该workerId
+	 */
+	@Override
+	public synchronized void destroy() {
+		released = true;
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+		if (workerId < 0 || lost) {
+			return;
+		}
+		Connection con = null;
+		PreparedStatement stmt = null;
+		try {
+			con = DataSourceUtils.getConnection(dataSource);
+			stmt = con.prepareStatement("UPDATE sys_sequence SET current_value = 0 WHERE name = ? AND current_value = ?");
+			stmt.setString(1, rowName(workerId));
+			stmt.setLong(2, leaseExpiry);
+			stmt.executeUpdate();
+		} catch (Exception e) {
+			// 释放失败时租约到期后自动失效
+			e.printStackTrace();
+		} finally {
+			JdbcUtils.closeStatement(stmt);
+			DataSourceUtils.releaseConnection(con, dataSource);
+			this.lost = true;
+		}
+	}
+
+	private String rowName(long id) {
+		return leaseName + "." + id;
+	}
+
+	/**
+	 * 不存在时插入租约行, 初始值0表示未被租用
+	 */
+	private void insertIfAbsent(Connection con, String name) throws SQLException {
+		PreparedStatement stmt = con.prepareStatement(
+				"INSERT IGNORE INTO sys_sequence (name, current_value, increment) VALUES (?, 0, 1)");
+		try {
+			stmt.setString(1, name);
+			stmt.executeUpdate();
+		} finally {
+			JdbcUtils.closeStatement(stmt);
+		}
+	}
+
+	private long nextval(Connection con, String name) throws SQLException {
+		PreparedStatement stmt = con.prepareStatement("SELECT nextval(?)");
+		ResultSet rs = null;
+		try {
+			stmt.setString(1, name);
+			rs = stmt.executeQuery();
+			return rs.next() ? rs.getLong(1) : 0;
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(stmt);
+		}
+	}
+
+	/**
+	 * 执行写入到期时间的条件update, 同一连接上读取last_insert_id得到写入的值
+	 *
+	 * @param con
+	 * @param sql
+	 *            参数依次为有效期, 行名, 版本(version小于0时没有)
+	 * @param name
+	 * @param version
+	 * @return 写入的到期时间, 条件不满足时返回-1
+	 * @throws SQLException
+	 */
+	private long update(Connection con, String sql, String name, long version) throws SQLException {
+		PreparedStatement stmt = con.prepareStatement(sql);
+		ResultSet rs = null;
+		try {
+			stmt.setLong(1, ttlMillis);
+			stmt.setString(2, name);
+			if (version >= 0) {
+				stmt.setLong(3, version);
+			}
+			if (stmt.executeUpdate() != 1) {
+				return -1;
+			}
+			JdbcUtils.closeStatement(stmt);
+			stmt = con.prepareStatement("SELECT last_insert_id()");
+			rs = stmt.executeQuery();
+			return rs.next() ? rs.getLong(1) : -1;
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(stmt);
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package cn.com.zach.tools.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 文件复制: object.IOUtils, io.IOUtils和NIOUtils的copyFile都使用这里的实现.
+ * 小文件用transferTo复制, 支持时由操作系统直接在内核中复制(sendfile), 不经过java堆;
+ * 大文件按RANGE_SIZE切分, 在共享的固定大小线程池中用FileChannel按位置并发读写, 每个线程复用自己的直接缓冲区.
+ * 复制结果返回字节数和耗时, 可以计算每秒字节数.
+ *
+ * @author zach
+ */
+public final class FileCopier {
+
+	/**
+	 * 超过此大小的文件并行复制, 默认64MB
+	 */
+	public final static long PARALLEL_THRESHOLD = 64L * NIOUtils.ONE_MB;
+
+	/**
+	 * 并行复制时每个任务复制的字节数, 默认8MB
+	 */
+	public final static long RANGE_SIZE = 8L * NIOUtils.ONE_MB;
+
+	/**
+	 * 并行复制时单次读写的缓冲区大小, 默认1MB
+	 */
+	private final static int BUFFER_SIZE = NIOUtils.ONE_MB;
+
+	/**
+	 * 并行复制线程数, 所有复制共享, 线程数固定避免大量复制同时进行时压垮磁盘
+	 */
+	private final static int PARALLELISM = Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * 并行复制线程池, 守护线程
+	 */
+	private final static ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM,
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("file-copy-%d").build());
+
+	/**
+	 * 复制线程的直接缓冲区
+	 */
+	private final static ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	private FileCopier() {
+	}
+
+	/**
+	 * 复制文件, 超过PARALLEL_THRESHOLD的文件并行复制
+	 * @param srcFile 源文件
+	 * @param destFile 目标文件, 父目录不存在时创建
+	 * @param preserveFileDate 是或否修改文件最后一次修改时间
+	 * @return 复制统计
+	 * @throws IOException
+	 */
+	public final static Stats copy(File srcFile, File destFile, boolean preserveFileDate) throws IOException {
+		return copy(srcFile, destFile, preserveFileDate, PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * 复制文件
+	 * @param srcFile 源文件
+	 * @param destFile 目标文件, 父目录不存在时创建
+	 * @param preserveFileDate 是或否修改文件最后一次修改时间
+	 * @param parallelThreshold 超过此大小的文件并行复制
+	 * @return 复制统计
+	 * @throws IOException
+	 */
+	public final static Stats copy(File srcFile, File destFile, boolean preserveFileDate, long parallelThreshold)
+			throws IOException {
+		long start = System.nanoTime();
+		File parent = destFile.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		long size;
+		try (FileChannel input = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+				FileChannel output = FileChannel.open(destFile.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			size = input.size();
+			if (size > parallelThreshold && size > RANGE_SIZE) {
+				parallelCopy(input, output, size);
+			} else {
+				transfer(input, output, size);
+			}
+		}
+		if (srcFile.length() != destFile.length()) {
+			throw new IOException("文件复制失败.");
+		}
+		if (preserveFileDate) {
+			destFile.setLastModified(srcFile.lastModified());
+		}
+		return new Stats(1, size, System.nanoTime() - start);
+	}
+
+	/**
+	 * 用transferTo复制, 单次transferTo可能不会复制全部字节, 循环直到完成
+	 */
+	private static void transfer(FileChannel input, FileChannel output, long size) throws IOException {
+		long position = 0;
+		while (position < size) {
+			long count = input.transferTo(position, size - position, output);
+			if (count <= 0 && input.size() < size) {
+				throw new IOException("文件复制失败, 源文件被截断.");
+			}
+			position += count;
+		}
+	}
+
+	/**
+	 * 按区间并行复制, 当前线程等待所有区间完成; 任意区间失败时取消其余区间
+	 */
+	private static void parallelCopy(final FileChannel input, final FileChannel output, long size) throws IOException {
+		List<Future<Long>> futures = new ArrayList<Future<Long>>((int) (size / RANGE_SIZE) + 1);
+		for (long position = 0; position < size; position += RANGE_SIZE) {
+			final long begin = position;
+			final long end = Math.min(size, position + RANGE_SIZE);
+			futures.add(EXECUTOR.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException {
+					return copyRange(input, output, begin, end);
+				}
+			}));
+		}
+		try {
+			for (Future<Long> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("文件复制被中断.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("文件复制失败.", cause);
+		} finally {
+			for (Future<Long> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * 按位置复制[begin, end)区间, 不改变通道的当前位置, 多个线程可以同时读写同一对通道
+	 */
+	private static long copyRange(FileChannel input, FileChannel output, long begin, long end) throws IOException {
+		ByteBuffer buffer = BUFFERS.get();
+		long position = begin;
+		while (position < end) {
+			buffer.clear();
+			if (end - position < buffer.capacity()) {
+				buffer.limit((int) (end - position));
+			}
+			int read = input.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("文件复制失败, 源文件被截断.");
+			}
+			buffer.flip();
+			long writePosition = position;
+			while (buffer.hasRemaining()) {
+				writePosition += output.write(buffer, writePosition);
+			}
+			position += read;
+		}
+		return end - begin;
+	}
+
+	/**
+	 * 复制统计
+	 */
+	public static final class Stats {
+
+		/**
+		 * 复制的文件数
+		 */
+		private final long files;
+
+		/**
+		 * 复制的字节数
+		 */
+		private final long bytes;
+
+		/**
+		 * 耗时(纳秒)
+		 */
+		private final long elapsedNanos;
+
+		public Stats(long files, long bytes, long elapsedNanos) {
+			this.files = files;
+			this.bytes = bytes;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public long getFiles() {
+			return files;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		}
+
+		/**
+		 * 每秒复制字节数
+		 *
+		 * @return
+		 */
+		public double getBytesPerSecond() {
+			return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "files=" + files + ", bytes=" + bytes + ", elapsed=" + getElapsedMillis() + "ms, "
+					+ String.format("%.1f", getBytesPerSecond() / NIOUtils.ONE_MB) + "MB/s";
+		}
+	}
+}
@@ -913,16 +913,7 @@ public class IOUtils {
 	 * @throws IOException
 	 */
 	public final static void copyFile(File srcFile, File destFile, boolean preserveFileDate) throws IOException {
-		try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(srcFile));
-		BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(destFile));){
-			byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-			while(bis.read(buffer) != EOF){
-				bos.write(buffer);
-			}
-			if(preserveFileDate) {
-				destFile.setLastModified(srcFile.lastModified());
-			}
-		}
+		FileCopier.copy(srcFile, destFile, preserveFileDate);
 	}
 	
 	/**
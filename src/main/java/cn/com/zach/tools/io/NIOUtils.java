@@ -9,7 +9,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 
@@ -244,31 +243,14 @@ public class NIOUtils {
 	}
 	
 	/**
-	 * 使用nio复制文件
+	 * 使用nio复制文件, 小文件使用transferTo, 大文件并行复制, 见{@link FileCopier}
 	 * @param srcFile 源文件
 	 * @param destFile 目标文件
 	 * @param preserveFileDate 是或否修改文件最后一次修改时间
 	 * @throws IOException
 	 */
 	public final static void copyFile(File srcFile, File destFile, boolean preserveFileDate) throws IOException {
-		try(FileInputStream fis = new FileInputStream(srcFile);
-				FileOutputStream fos = new FileOutputStream(destFile);
-				FileChannel input = fis.getChannel();
-				FileChannel output = fos.getChannel()){
-			long size = input.size();
-			long position = 0;
-			long count = 0;
-			while(position < size) {
-				count = ((size - position) > FILE_COPY_BUFFER_SIZE)? FILE_COPY_BUFFER_SIZE : (size - position);
-				position += output.transferFrom(input, position, count);
-			}
-		}
-		if (srcFile.length() != destFile.length()) {
-			throw new IOException("文件复制失败.");
-		}
-		if (preserveFileDate) {
-			destFile.setLastModified(srcFile.lastModified());
-		}
+		FileCopier.copy(srcFile, destFile, preserveFileDate);
 	}
 	
 	/**
@@ -19,6 +19,7 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.math.BigInteger;
 import java.net.HttpURLConnection;
@@ -32,8 +33,13 @@ import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
@@ -46,6 +52,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import cn.com.zach.tools.io.FileCopier;
 import cn.com.zach.tools.io.TraverseEvent;
 
 /**
@@ -814,6 +821,58 @@ public final class IOUtils
 	 * @throws IOException
 	 */
 	public final static void copyDirectory(File srcDir, File destDir, FileFilter filter, boolean preserveFileDate) throws IOException
+	{
+		copyDirectory( srcDir ,destDir ,filter ,preserveFileDate ,exclusionList( srcDir ,destDir ,filter ) );
+	}
+
+	/**
+	 * 使用ForkJoinPool并行复制文件夹, 每个子文件夹一个任务, 文件按COPY_BATCH_SIZE分批成任务, 空闲线程窃取其他线程的任务;
+	 * 排除列表和preserveFileDate与{@link #copyDirectory(File, File, FileFilter, boolean)}相同, 文件夹的修改时间在其所有内容复制完成后设置.
+	 * 与串行复制不同, 空文件夹也会创建
+	 * @param srcDir 源文件夹
+	 * @param destDir 目标文件夹
+	 * @param filter 文件过滤器
+	 * @param preserveFileDate 是或否修改文件夹最后一次修改时间
+	 * @param parallelism 并行线程数
+	 * @return 复制的文件数, 字节数和耗时
+	 * @throws IOException
+	 */
+	public final static FileCopier.Stats copyDirectory(File srcDir, File destDir, FileFilter filter, boolean preserveFileDate, int parallelism) throws IOException
+	{
+		if ( parallelism < 1 )
+		{
+			throw new IllegalArgumentException( "parallelism必须大于0: " + parallelism );
+		}
+		long start = System.nanoTime();
+		List<String> exclusionList = exclusionList( srcDir ,destDir ,filter );
+		Set<String> exclusions = exclusionList == null ? null : new HashSet<String>( exclusionList );
+		LongAdder files = new LongAdder();
+		LongAdder bytes = new LongAdder();
+		ForkJoinPool pool = new ForkJoinPool( parallelism );
+		try
+		{
+			pool.invoke( new DirectoryCopyTask( srcDir, destDir, filter, preserveFileDate, exclusions, files, bytes ) );
+		}
+		catch ( UncheckedIOException e )
+		{
+			throw e.getCause();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return new FileCopier.Stats( files.sum(), bytes.sum(), System.nanoTime() - start );
+	}
+
+	/**
+	 * 目标文件夹在源文件夹内时, 把源文件夹当前的直接子文件对应的目标路径加入排除列表, 避免复制自己复制出的文件
+	 * @param srcDir 源文件夹
+	 * @param destDir 目标文件夹
+	 * @param filter 文件过滤器
+	 * @return 排除列表, 不需要排除时返回null
+	 * @throws IOException
+	 */
+	private final static List<String> exclusionList(File srcDir, File destDir, FileFilter filter) throws IOException
 	{
 		List<String> exclusionList = null;
 		if ( destDir.getCanonicalPath().startsWith( srcDir.getCanonicalPath() ) )
@@ -829,7 +888,7 @@ public final class IOUtils
 				}
 			}
 		}
-		copyDirectory( srcDir ,destDir ,filter ,preserveFileDate ,exclusionList );
+		return exclusionList;
 	}
 
 	/**
@@ -866,51 +925,139 @@ public final class IOUtils
 	}
 
 	/**
-	 * 使用nio复制文件
-	 * @param srcFile 源文件
-	 * @param destFile 目标文件
-	 * @param preserveFileDate 是或否修改文件最后一次修改时间
-	 * @throws IOException
+	 * 并行复制时每个文件任务复制的文件数
 	 */
-	public final static void copyFile(File srcFile, File destFile, boolean preserveFileDate) throws IOException
+	private final static int	COPY_BATCH_SIZE			= 32;
+
+	/**
+	 * 并行复制一个文件夹: 子文件夹各自fork一个任务, 文件分批fork, 全部完成后设置文件夹修改时间
+	 */
+	private final static class DirectoryCopyTask extends RecursiveAction
 	{
-		FileInputStream fis = null;
-		FileOutputStream fos = null;
-		FileChannel input = null;
-		FileChannel output = null;
-		try
-		{
-			destFile.getParentFile().mkdirs();
-			fis = new FileInputStream( srcFile );
-			fos = new FileOutputStream( destFile );
-			input = fis.getChannel();
-			output = fos.getChannel();
-			long size = input.size();
-			long pos = 0;
-			long count = 0;
-			while ( pos < size )
-			{
-				count = size - pos > FILE_COPY_BUFFER_SIZE ? FILE_COPY_BUFFER_SIZE : size - pos;
-				pos += output.transferFrom( input ,pos ,count );
-			}
-		}
-		finally
+
+		private static final long	serialVersionUID	= 1L;
+
+		private final File			srcDir;
+
+		private final File			destDir;
+
+		private final FileFilter	filter;
+
+		private final boolean		preserveFileDate;
+
+		private final Set<String>	exclusions;
+
+		private final LongAdder		files;
+
+		private final LongAdder		bytes;
+
+		DirectoryCopyTask(File srcDir, File destDir, FileFilter filter, boolean preserveFileDate, Set<String> exclusions, LongAdder files, LongAdder bytes)
 		{
-			close( output );
-			close( fos );
-			close( input );
-			close( fis );
+			this.srcDir = srcDir;
+			this.destDir = destDir;
+			this.filter = filter;
+			this.preserveFileDate = preserveFileDate;
+			this.exclusions = exclusions;
+			this.files = files;
+			this.bytes = bytes;
 		}
-		if ( srcFile.length() != destFile.length() )
+
+		@Override
+		protected void compute()
 		{
-			throw new IOException( "文件复制失败." );
+			try
+			{
+				File[] srcFiles = filter == null ? srcDir.listFiles() : srcDir.listFiles( filter );
+				if ( srcFiles == null )
+				{
+					throw new IOException( "无法读取文件夹: " + srcDir );
+				}
+				destDir.mkdirs();
+				List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+				List<File> batch = new ArrayList<File>( COPY_BATCH_SIZE );
+				for ( File srcFile : srcFiles )
+				{
+					if ( exclusions != null && exclusions.contains( srcFile.getCanonicalPath() ) )
+					{
+						continue;
+					}
+					if ( srcFile.isDirectory() )
+					{
+						tasks.add( new DirectoryCopyTask( srcFile, new File( destDir, srcFile.getName() ), filter, preserveFileDate, exclusions, files, bytes ) );
+					}
+					else
+					{
+						batch.add( srcFile );
+						if ( batch.size() == COPY_BATCH_SIZE )
+						{
+							tasks.add( new FileCopyTask( batch ) );
+							batch = new ArrayList<File>( COPY_BATCH_SIZE );
+						}
+					}
+				}
+				if ( !batch.isEmpty() )
+				{
+					tasks.add( new FileCopyTask( batch ) );
+				}
+				invokeAll( tasks );
+				if ( preserveFileDate )
+				{
+					destDir.setLastModified( srcDir.lastModified() );
+				}
+			}
+			catch ( IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
 		}
-		if ( preserveFileDate )
+
+		/**
+		 * 复制一批文件到当前目标文件夹
+		 */
+		private final class FileCopyTask extends RecursiveAction
 		{
-			destFile.setLastModified( srcFile.lastModified() );
+
+			private static final long	serialVersionUID	= 1L;
+
+			private final List<File>	srcFiles;
+
+			FileCopyTask(List<File> srcFiles)
+			{
+				this.srcFiles = srcFiles;
+			}
+
+			@Override
+			protected void compute()
+			{
+				try
+				{
+					for ( File srcFile : srcFiles )
+					{
+						FileCopier.Stats stats = FileCopier.copy( srcFile ,new File( destDir, srcFile.getName() ) ,preserveFileDate );
+						files.increment();
+						bytes.add( stats.getBytes() );
+					}
+				}
+				catch ( IOException e )
+				{
+					throw new UncheckedIOException( e );
+				}
+			}
 		}
 	}
 
+	/**
+	 * 使用nio复制文件, 小文件使用transferTo, 大文件并行复制, 见{@link FileCopier}
+	 * @param srcFile 源文件
+	 * @param destFile 目标文件
+	 * @param preserveFileDate 是或否修改文件最后一次修改时间
+	 * @throws IOException
+	 */
+	public final static void copyFile(File srcFile, File destFile, boolean preserveFileDate) throws IOException
+	{
+		FileCopier.copy( srcFile ,destFile ,preserveFileDate );
+	}
+
 	//
 	//	/**
 	//	 * 把byte数组写入Writer中
@@ -125,5 +125,8 @@ COMMIT;
 -- 添加新sequence
 -- INSERT INTO sys_sequence VALUES('seqName',1000,10);
 
+-- workerId租约: WorkerIdLeaseManager自动插入'worker_id'和'worker_id.0'到'worker_id.N'行,
+-- current_value保存租约到期时间(毫秒), 0表示未被租用
+
 
 
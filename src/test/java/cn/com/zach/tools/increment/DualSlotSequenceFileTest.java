@@ -0,0 +1,108 @@
+package cn.com.zach.tools.increment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 双槽位序列文件: 旧格式转换和写入中断后的恢复
+ *
+ * @author zach
+ */
+public class DualSlotSequenceFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void tornMigrationFallsBackToLegacyValue() throws IOException {
+		File file = legacyFile(1000);
+		// 槽位0的转换写入在校验和写到一半时中断: 值和代数已写入, 校验和只有2字节
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(8);
+			raf.writeLong(0);
+			raf.writeShort(0x7f7f);
+		}
+		assertEquals(1010, reserveAndClose(file, 10));
+		assertEquals(1020, reserveAndClose(file, 10));
+	}
+
+	@Test
+	public void legacyFileWithTornFirstSlotWrite() throws IOException {
+		File file = legacyFile(1000);
+		// 旧格式文件的槽位1只写入了一部分, 槽位0没有有效数据: 按旧格式的值恢复
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(24);
+			raf.writeLong(1010);
+			raf.writeShort(1);
+		}
+		assertEquals(1010, reserveAndClose(file, 10));
+	}
+
+	@Test
+	public void migrationWritesSlotZeroBeforeSlotOne() throws IOException {
+		File file = legacyFile(1000);
+		DualSlotSequenceFile sequenceFile = new DualSlotSequenceFile(file, true);
+		sequenceFile.close();
+		assertTrue(file.length() >= 24);
+		assertEquals(1010, reserveAndClose(file, 10));
+		// 槽位1的写入中断, 恢复到槽位0中转换后的旧值
+		corrupt(file, 24 + 16);
+		assertEquals(1010, reserveAndClose(file, 10));
+	}
+
+	@Test
+	public void emptyFileStartsFromZero() throws IOException {
+		File file = folder.newFile();
+		assertEquals(10, reserveAndClose(file, 10));
+		assertEquals(20, reserveAndClose(file, 10));
+	}
+
+	@Test
+	public void bothSlotsCorruptedThrows() throws IOException {
+		File file = folder.newFile();
+		reserveAndClose(file, 10);
+		reserveAndClose(file, 10);
+		corrupt(file, 16);
+		corrupt(file, 24 + 16);
+		try {
+			new DualSlotSequenceFile(file, true).close();
+			fail("两个槽位都已损坏时应抛出异常");
+		} catch (IOException expected) {
+		}
+	}
+
+	private File legacyFile(long value) throws IOException {
+		File file = folder.newFile();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.writeLong(value);
+		}
+		return file;
+	}
+
+	private long reserveAndClose(File file, int size) throws IOException {
+		DualSlotSequenceFile sequenceFile = new DualSlotSequenceFile(file, true);
+		try {
+			return sequenceFile.reserve(size);
+		} finally {
+			sequenceFile.close();
+		}
+	}
+
+	private void corrupt(File file, long position) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 0xff);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package cn.com.zach.tools.increment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 本地序列文件: 关闭crashSafe后不能按单值格式读取双槽位文件
+ *
+ * @author zach
+ */
+public class LocalSequenceFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void plainReadOfDualSlotFileFails() throws IOException {
+		File file = dualSlotFile();
+		assertRejected(new LocalSequenceFile(file));
+	}
+
+	@Test
+	public void mappedReadOfDualSlotFileFails() throws IOException {
+		File file = dualSlotFile();
+		LocalSequenceFile sequenceFile = new LocalSequenceFile(file);
+		sequenceFile.setMemoryMapped(true);
+		assertRejected(sequenceFile);
+	}
+
+	@Test
+	public void crashSafeContinuesDualSlotFile() throws IOException {
+		File file = dualSlotFile();
+		LocalSequenceFile sequenceFile = new LocalSequenceFile(file);
+		sequenceFile.setCrashSafe(true);
+		try {
+			assertEquals(40, sequenceFile.reserve(10));
+		} finally {
+			sequenceFile.close();
+		}
+	}
+
+	/**
+	 * 双槽位格式写过三个块, 槽位0中是过期的值
+	 */
+	private File dualSlotFile() throws IOException {
+		File file = folder.newFile();
+		LocalSequenceFile sequenceFile = new LocalSequenceFile(file);
+		sequenceFile.setCrashSafe(true);
+		try {
+			sequenceFile.reserve(10);
+			sequenceFile.reserve(10);
+			sequenceFile.reserve(10);
+		} finally {
+			sequenceFile.close();
+		}
+		return file;
+	}
+
+	private void assertRejected(LocalSequenceFile sequenceFile) {
+		try {
+			sequenceFile.reserve(10);
+			fail("按单值格式读取双槽位文件应抛出异常");
+		} catch (IOException expected) {
+		} finally {
+			sequenceFile.close();
+		}
+	}
+}